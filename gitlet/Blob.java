@@ -1,51 +1,42 @@
 package gitlet;
 
 import java.io.File;
-import java.io.Serializable;
-
-public class Blob implements Serializable {
-    /** sha1 of the blob object. */
-    private String _blobSha1;
-
-    /** the content of the blob, stored as byte[]. */
-    private byte[] _content;
-
-    /** content of the blob, stored as String. */
-    private String _contString;
-
-    /** the file that blob is storing. */
-    private File _file;
-
-    public Blob(File file) {
-        _file = file;
-        _content = Utils.readContents(file);
-        _contString = Utils.readContentsAsString(file);
-        _blobSha1 = Utils.sha1(Utils.serialize(_content));
-    }
-
-    public String getBlobSha1() {
-        if (this.equals(null)) {
-            return null;
-        } else {
-            return _blobSha1;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/** Hashing of file contents into blob ids. Blobs themselves are the
+ *  raw contents of files, stored by ObjectStore.writeFile. */
+public class Blob {
+    /** bytes of a file mapped or copied at a time. */
+    static final int CHUNK = 1 << 23;
+
+    /** Returns the sha1 of FILE's content, mapping it CHUNK bytes at a
+     *  time so memory use does not depend on the file's size. */
+    static String hash(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            long size = channel.size();
+            for (long pos = 0; pos < size; pos += CHUNK) {
+                md.update(channel.map(FileChannel.MapMode.READ_ONLY,
+                        pos, Math.min(CHUNK, size - pos)));
+            }
+            return hex(md.digest());
+        } catch (IOException | NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
         }
     }
 
-    public String contString() {
-        return _contString;
-    }
-
-    public boolean blobEquals(Blob blob1) {
-        if (blob1 != null && this != null) {
-            return blob1.getBlobSha1().equals(this.getBlobSha1());
-        } else if (blob1.equals(null) && this.equals(null)) {
-            return true;
+    static String hex(byte[] digest) {
+        StringBuilder result = new StringBuilder(2 * digest.length);
+        for (byte b: digest) {
+            result.append(Character.forDigit((b >> 4) & 0xf, 16));
+            result.append(Character.forDigit(b & 0xf, 16));
         }
-        return false;
-    }
-
-    public byte[] getContent() {
-        return _content;
+        return result.toString();
     }
 
 }
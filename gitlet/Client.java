@@ -0,0 +1,93 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+
+/** A thin front end for Gitlet: sends its arguments to the daemon of
+ *  the working tree, if one is running, and prints what the daemon
+ *  sends back, exiting with the same status. Runs the command in this
+ *  process, through Main, when no daemon answers or when the command
+ *  is one the daemon does not serve. */
+public class Client {
+
+    /** Usage: java gitlet.Client ARGS..., where ARGS are as for Main. */
+    public static void main(String... args) throws IOException {
+        File socket = Utils.join(Repo.WORKDIRECT, ".gitlet", "daemon.sock");
+        SocketChannel channel = null;
+        if (args.length > 0 && !local(args[0])) {
+            channel = connect(socket);
+        }
+        if (channel == null) {
+            Main.main(args);
+            return;
+        }
+        int status;
+        try (SocketChannel open = channel) {
+            DataOutputStream out = new DataOutputStream(
+                    Channels.newOutputStream(open));
+            out.writeUTF(Repo.WORKDIRECT.getPath());
+            out.writeInt(args.length);
+            for (String arg: args) {
+                out.writeUTF(arg);
+            }
+            out.flush();
+            status = relay(new DataInputStream(new BufferedInputStream(
+                    Channels.newInputStream(open))));
+        }
+        System.exit(status);
+    }
+
+    /** Returns true if COMMAND is not served by the daemon. */
+    static boolean local(String command) {
+        return command.equals("init") || command.equals("watch")
+                || command.equals("daemon");
+    }
+
+    /** Returns a connection to the daemon listening on SOCKET, or null
+     *  if none is. */
+    static SocketChannel connect(File socket) {
+        if (!socket.exists()) {
+            return null;
+        }
+        try {
+            SocketChannel channel = SocketChannel.open(
+                    StandardProtocolFamily.UNIX);
+            try {
+                channel.connect(UnixDomainSocketAddress.of(socket.toPath()));
+                return channel;
+            } catch (IOException excp) {
+                channel.close();
+                return null;
+            }
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+
+    /** Copies the frames of a reply from IN to standard output and
+     *  error, returning the exit status that ends it. */
+    private static int relay(DataInputStream in) throws IOException {
+        while (true) {
+            int type = in.readByte();
+            if (type == Daemon.EXIT) {
+                System.out.flush();
+                System.err.flush();
+                return in.readInt();
+            }
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            if (type == Daemon.ERR) {
+                System.err.write(bytes, 0, bytes.length);
+            } else {
+                System.out.write(bytes, 0, bytes.length);
+            }
+        }
+    }
+}
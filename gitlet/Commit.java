@@ -1,12 +1,40 @@
 package gitlet;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.TreeMap;
-
+import java.util.SortedMap;
+
+/** A commit, stored as a COMMIT object in a small binary encoding: the
+ *  byte 'C', a version byte, a flags byte saying which parents follow,
+ *  the raw 20-byte ids of the tree and of each parent, and then the time
+ *  and message, each as a varint length and UTF-8 bytes. The id of a
+ *  new commit is the sha1 of that encoding. Commits written by older
+ *  versions were Java-serialized; they are still read, keeping their
+ *  ids, and Repo.migrate re-encodes them. */
 public class Commit implements Serializable {
 
+    /** serialVersionUID of the old Java-serialized commits. */
+    private static final long serialVersionUID = 8733573312444213822L;
+
+    /** first byte of an encoded commit. */
+    private static final int MAGIC = 'C';
+
+    /** version of the encoding. */
+    private static final int VERSION = 1;
+
+    /** flag set when the first parent follows the tree id. */
+    private static final int HAS_PARENT1 = 1;
+
+    /** flag set when the second parent follows. */
+    private static final int HAS_PARENT2 = 2;
+
     /** the time when the commit was made. */
     private String _time;
 
@@ -19,8 +47,8 @@ public class Commit implements Serializable {
     /** second parent's sha1. */
     private String _parentSha2;
 
-    /** <fileName, Blob>. Stores blob objects. */
-    private TreeMap<String, Blob> _blobObject;
+    /** sha1 of the root tree. */
+    private String _treeSha1;
 
     /** sha1 of the commit. */
     private String _comSha1;
@@ -28,32 +56,128 @@ public class Commit implements Serializable {
     /** shows if the commit is a merge commit. */
     private boolean mergeCommit = false;
 
-    public Commit(String message, String parentSha1,
-                  TreeMap<String, Blob> blob) {
+    public Commit(String message, String parentSha1, String treeSha1) {
+        this(message, parentSha1, null, treeSha1);
+    }
+
+    /** A merge commit of PARENTSHA1 and PARENTSHA2 (which may be null). */
+    public Commit(String message, String parentSha1, String parentSha2,
+                  String treeSha1) {
         if (parentSha1 == null) {
             _time = "Thu Jan 1 00:00:00 1970 -0800";
         } else {
             _parentSha1 = parentSha1;
-            Date curr = new Date(0);
+            Date curr = new Date();
             String pattern = "EEE MMM dd HH:mm:ss yyyy Z";
             SimpleDateFormat result = new SimpleDateFormat(pattern);
             _time = result.format(curr);
         }
+        _parentSha2 = parentSha2;
+        mergeCommit = parentSha2 != null;
         _message = message;
-        _comSha1 = Utils.sha1(Utils.serialize(this));
-        _blobObject = blob;
+        _treeSha1 = treeSha1;
+        _comSha1 = Utils.sha1(encode());
+    }
+
+    private Commit() {
+    }
+
+    /** Returns the commit SHA1 of the tree TREESHA1, with parents
+     *  PARENTSHA1 and PARENTSHA2 (either may be null), TIME and MESSAGE,
+     *  as when a commit of an older layout is re-encoded under its old
+     *  id. */
+    static Commit of(String sha1, String treeSha1, String parentSha1,
+                     String parentSha2, String time, String message) {
+        Commit commit = new Commit();
+        commit._comSha1 = sha1;
+        commit._treeSha1 = treeSha1;
+        commit._parentSha1 = parentSha1;
+        commit._parentSha2 = parentSha2;
+        commit.mergeCommit = parentSha2 != null;
+        commit._time = time;
+        commit._message = message;
+        return commit;
+    }
+
+    /** Returns the binary encoding of this commit. */
+    public byte[] encode() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(MAGIC);
+        out.write(VERSION);
+        out.write((_parentSha1 != null ? HAS_PARENT1 : 0)
+                | (_parentSha2 != null ? HAS_PARENT2 : 0));
+        out.writeBytes(ObjectStore.rawId(_treeSha1));
+        if (_parentSha1 != null) {
+            out.writeBytes(ObjectStore.rawId(_parentSha1));
+        }
+        if (_parentSha2 != null) {
+            out.writeBytes(ObjectStore.rawId(_parentSha2));
+        }
+        ObjectStore.writeString(out, _time);
+        ObjectStore.writeString(out, _message);
+        return out.toByteArray();
     }
 
-    public TreeMap<String, Blob> getTree() {
-        return _blobObject;
+    /** Returns the commit SHA1 whose stored content is BYTES, in either
+     *  the binary encoding or the old serialized form. */
+    public static Commit decode(String sha1, byte[] bytes) {
+        if (ObjectStore.isSerialized(bytes)) {
+            try (ObjectInputStream in = new ObjectInputStream(
+                    new ByteArrayInputStream(bytes))) {
+                return (Commit) in.readObject();
+            } catch (IOException | ClassCastException
+                    | ClassNotFoundException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        if (bytes.length < 3 || bytes[0] != MAGIC) {
+            throw new IllegalArgumentException("corrupt commit " + sha1);
+        }
+        if (bytes[1] != VERSION) {
+            throw new IllegalArgumentException("unknown commit version "
+                    + bytes[1]);
+        }
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        int flags = bytes[2];
+        int[] pos = {3};
+        Commit commit = new Commit();
+        commit._comSha1 = sha1;
+        commit._treeSha1 = readId(buf, pos);
+        if ((flags & HAS_PARENT1) != 0) {
+            commit._parentSha1 = readId(buf, pos);
+        }
+        if ((flags & HAS_PARENT2) != 0) {
+            commit._parentSha2 = readId(buf, pos);
+            commit.mergeCommit = true;
+        }
+        commit._time = ObjectStore.readString(bytes, pos);
+        commit._message = ObjectStore.readString(bytes, pos);
+        return commit;
+    }
+
+    private static String readId(ByteBuffer buf, int[] pos) {
+        String result = ObjectStore.hexId(buf, pos[0]);
+        pos[0] += ObjectStore.UID_LENGTH / 2;
+        return result;
+    }
+
+    /** Returns <fileName, blob sha1> for the root tree, read through
+     *  Repo.readTree, so the files are cached, and charged for, apart
+     *  from the commit. The map cannot be modified. */
+    public SortedMap<String, String> getTree() {
+        return Repo.readTree(_treeSha1);
+    }
+
+    public String getTreeSha1() {
+        return _treeSha1;
     }
 
     public boolean blobExists(String fileName) {
-        return _blobObject.containsKey(fileName);
+        return getTree().containsKey(fileName);
     }
 
-    public Blob getBlob(String fileName) {
-        return _blobObject.get(fileName);
+    public String getBlob(String fileName) {
+        return getTree().get(fileName);
     }
 
     public String getSha1() {
@@ -64,6 +188,17 @@ public class Commit implements Serializable {
         return _time;
     }
 
+    /** Returns the time of the commit in seconds since the epoch. */
+    public long getTimestamp() {
+        String pattern = "EEE MMM d HH:mm:ss yyyy Z";
+        try {
+            return new SimpleDateFormat(pattern).parse(_time).getTime()
+                    / 1000;
+        } catch (ParseException excp) {
+            return 0;
+        }
+    }
+
     public String getMessage() {
         return _message;
     }
@@ -76,9 +211,4 @@ public class Commit implements Serializable {
         return _parentSha2;
     }
 
-    public void addParent2(String parent) {
-        mergeCommit = true;
-        _parentSha2 = parent;
-    }
-
 }
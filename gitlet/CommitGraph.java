@@ -0,0 +1,428 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+/** The shape of history, readable without opening any commit. The file
+ *  holds a magic number and version, a 256-entry fanout table and the
+ *  sorted raw 20-byte commit ids, followed by one fixed-size record per
+ *  commit in the same order: its tree id, the positions of its first
+ *  and second parents (-1 for none), its generation number (1 for a
+ *  root, otherwise one more than its highest parent) and its time in
+ *  seconds. It is read through a memory map. */
+public class CommitGraph {
+
+    /** magic number at the start of the graph, "CGPH". */
+    private static final int MAGIC = 0x43475048;
+
+    /** version of the graph layout. */
+    private static final int VERSION = 1;
+
+    /** number of raw bytes in an id. */
+    private static final int ID_BYTES = ObjectStore.UID_LENGTH / 2;
+
+    /** bytes before the first id. */
+    private static final int HEADER = 8 + 256 * 4;
+
+    /** bytes in a record: tree, two parents, generation and time. */
+    private static final int RECORD = ID_BYTES + 4 + 4 + 4 + 8;
+
+    /** parent position of a commit without that parent. */
+    static final int NONE = -1;
+
+    /** paint flag of commits reachable from the first tip. */
+    private static final int PARENT1 = 1;
+
+    /** paint flag of commits reachable from the second tip. */
+    private static final int PARENT2 = 2;
+
+    /** paint flag of commits below an already found common ancestor. */
+    private static final int STALE = 4;
+
+    /** the graph file. */
+    private File _file;
+
+    /** mapped contents of _file, or null before the first lookup. */
+    private ByteBuffer _map;
+
+    /** stamp of _file when _map was loaded. */
+    private String _stamp;
+
+    /** number of commits in the graph. */
+    private int _size;
+
+    public CommitGraph(File file) {
+        _file = file;
+    }
+
+    /** Forgets the loaded graph if the file has changed on disk since. */
+    public void refresh() {
+        if (_map != null && !FileStamp.of(_file).equals(_stamp)) {
+            _map = null;
+        }
+    }
+
+    private void load() {
+        if (_map != null) {
+            return;
+        }
+        _stamp = FileStamp.of(_file);
+        if (!_file.exists()) {
+            _map = ByteBuffer.allocate(HEADER);
+            _map.putInt(0, MAGIC);
+            _map.putInt(4, VERSION);
+            _size = 0;
+            return;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(_file, "r");
+             FileChannel channel = raf.getChannel()) {
+            _map = channel.map(FileChannel.MapMode.READ_ONLY,
+                    0, channel.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (_map.getInt(0) != MAGIC || _map.getInt(4) != VERSION) {
+            throw new IllegalArgumentException("corrupt commit graph");
+        }
+        _size = fanout(255);
+    }
+
+    private int fanout(int b) {
+        return b < 0 ? 0 : _map.getInt(8 + 4 * b);
+    }
+
+    public int size() {
+        load();
+        return _size;
+    }
+
+    /** Returns the position of SHA1, or -1 if it is not in the graph. */
+    public int find(String sha1) {
+        load();
+        if (sha1 == null || sha1.length() != ObjectStore.UID_LENGTH) {
+            return NONE;
+        }
+        byte[] raw = ObjectStore.rawId(sha1);
+        int pos = insertionPoint(raw);
+        if (pos < _size && compare(pos, raw) == 0) {
+            return pos;
+        }
+        return NONE;
+    }
+
+    public String id(int i) {
+        load();
+        return ObjectStore.hexId(_map, HEADER + i * ID_BYTES);
+    }
+
+    public String tree(int i) {
+        load();
+        return ObjectStore.hexId(_map, record(i));
+    }
+
+    public int parent1(int i) {
+        load();
+        return _map.getInt(record(i) + ID_BYTES);
+    }
+
+    public int parent2(int i) {
+        load();
+        return _map.getInt(record(i) + ID_BYTES + 4);
+    }
+
+    public int generation(int i) {
+        load();
+        return _map.getInt(record(i) + ID_BYTES + 8);
+    }
+
+    public long time(int i) {
+        load();
+        return _map.getLong(record(i) + ID_BYTES + 12);
+    }
+
+    private int record(int i) {
+        return HEADER + _size * ID_BYTES + i * RECORD;
+    }
+
+    /** Returns the position of the best common ancestor of the commits
+     *  at positions A and B, or NONE if they share no history.
+     *
+     *  Commits are visited in order of decreasing generation number
+     *  (then time), following both parents. Each is painted with the
+     *  tips it can be reached from; the first commit painted by both
+     *  tips is the answer, and everything below it is painted STALE.
+     *  The walk stops when only stale commits are left, so it visits
+     *  the commits between the tips and the base rather than the whole
+     *  history. */
+    public int mergeBase(int a, int b) {
+        if (a == b) {
+            return a;
+        }
+        HashMap<Integer, Integer> paint = new HashMap<Integer, Integer>();
+        PriorityQueue<Integer> queue = new PriorityQueue<Integer>(
+                (x, y) -> generation(x) != generation(y)
+                        ? Integer.compare(generation(y), generation(x))
+                        : Long.compare(time(y), time(x)));
+        paint.put(a, PARENT1);
+        paint.put(b, PARENT2);
+        queue.add(a);
+        queue.add(b);
+        int active = 2;
+        int result = NONE;
+        while (active > 0) {
+            int c = queue.poll();
+            int flags = paint.get(c);
+            if ((flags & STALE) == 0) {
+                active -= 1;
+            }
+            if ((flags & (PARENT1 | PARENT2)) == (PARENT1 | PARENT2)
+                    && (flags & STALE) == 0) {
+                if (result == NONE) {
+                    result = c;
+                }
+                flags |= STALE;
+            }
+            for (int p: new int[] {parent1(c), parent2(c)}) {
+                if (p == NONE) {
+                    continue;
+                }
+                int old = paint.getOrDefault(p, 0);
+                if ((old & flags) == flags) {
+                    continue;
+                }
+                if (queue.remove(p) && (old & STALE) == 0) {
+                    active -= 1;
+                }
+                paint.put(p, old | flags);
+                queue.add(p);
+                if (((old | flags) & STALE) == 0) {
+                    active += 1;
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Returns true if the commit at position ANCESTOR is reachable from
+     *  the commit at position DESCENDANT. Commits with a lower generation
+     *  than ANCESTOR cannot reach it and are not explored. */
+    public boolean isAncestor(int ancestor, int descendant) {
+        int floor = generation(ancestor);
+        HashSet<Integer> seen = new HashSet<Integer>();
+        ArrayDeque<Integer> stack = new ArrayDeque<Integer>();
+        stack.push(descendant);
+        while (!stack.isEmpty()) {
+            int c = stack.pop();
+            if (c == ancestor) {
+                return true;
+            }
+            if (!seen.add(c) || generation(c) <= floor) {
+                continue;
+            }
+            for (int p: new int[] {parent1(c), parent2(c)}) {
+                if (p != NONE) {
+                    stack.push(p);
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Adds COMMITS, each after any of its parents among them and with
+     *  its other parents already in the graph, rewriting the file once in
+     *  place of the old one. Commits already present are skipped. */
+    public void add(List<Commit> commits) {
+        load();
+        TreeMap<String, Commit> added = new TreeMap<String, Commit>();
+        HashMap<String, Integer> generations = new HashMap<String, Integer>();
+        for (Commit commit: commits) {
+            if (find(commit.getSha1()) != NONE
+                    || added.containsKey(commit.getSha1())) {
+                continue;
+            }
+            int generation = 1;
+            for (String parent: new String[] {commit.getParentSha1(),
+                    commit.getParentSha2()}) {
+                if (generations.containsKey(parent)) {
+                    generation = Math.max(generation,
+                            generations.get(parent) + 1);
+                } else if (find(parent) != NONE) {
+                    generation = Math.max(generation,
+                            generation(find(parent)) + 1);
+                }
+            }
+            added.put(commit.getSha1(), commit);
+            generations.put(commit.getSha1(), generation);
+        }
+        if (added.isEmpty()) {
+            return;
+        }
+        int size = _size + added.size();
+        int[] moved = new int[_size];
+        HashMap<String, Integer> positions = new HashMap<String, Integer>();
+        Commit[] order = new Commit[size];
+        int[] fanout = new int[256];
+        int i = 0;
+        for (String sha1: added.keySet()) {
+            byte[] raw = ObjectStore.rawId(sha1);
+            while (i < _size && compare(i, raw) < 0) {
+                moved[i] = i + positions.size();
+                i += 1;
+            }
+            int pos = i + positions.size();
+            positions.put(sha1, pos);
+            order[pos] = added.get(sha1);
+            fanout[raw[0] & 0xff] += 1;
+        }
+        for (; i < _size; i += 1) {
+            moved[i] = i + positions.size();
+        }
+        ByteBuffer out = ByteBuffer.allocate(
+                HEADER + size * (ID_BYTES + RECORD));
+        out.putInt(MAGIC);
+        out.putInt(VERSION);
+        int sum = 0;
+        for (int b = 0; b < 256; b += 1) {
+            sum += fanout[b];
+            out.putInt(fanout(b) + sum);
+        }
+        for (int k = 0, old = 0; k < size; k += 1) {
+            if (order[k] != null) {
+                out.put(ObjectStore.rawId(order[k].getSha1()));
+            } else {
+                out.put(slice(HEADER + old * ID_BYTES,
+                        HEADER + (old + 1) * ID_BYTES));
+                old += 1;
+            }
+        }
+        for (int k = 0, old = 0; k < size; k += 1) {
+            if (order[k] != null) {
+                Commit commit = order[k];
+                out.put(ObjectStore.rawId(commit.getTreeSha1()));
+                out.putInt(position(commit.getParentSha1(), positions,
+                        moved));
+                out.putInt(position(commit.getParentSha2(), positions,
+                        moved));
+                out.putInt(generations.get(commit.getSha1()));
+                out.putLong(commit.getTimestamp());
+            } else {
+                out.put(slice(record(old), record(old) + ID_BYTES));
+                out.putInt(parent1(old) == NONE ? NONE
+                        : moved[parent1(old)]);
+                out.putInt(parent2(old) == NONE ? NONE
+                        : moved[parent2(old)]);
+                out.putInt(generation(old));
+                out.putLong(time(old));
+                old += 1;
+            }
+        }
+        write(out.array());
+    }
+
+    /** Returns COMMITS, by id, ordered so that every commit comes after
+     *  those of its parents that are among them. */
+    static List<Commit> parentsFirst(Map<String, Commit> commits) {
+        List<Commit> result = new ArrayList<Commit>();
+        HashSet<String> done = new HashSet<String>();
+        for (String sha1: new TreeMap<String, Commit>(commits).keySet()) {
+            ArrayList<String> stack = new ArrayList<String>();
+            stack.add(sha1);
+            while (!stack.isEmpty()) {
+                String top = stack.get(stack.size() - 1);
+                if (done.contains(top)) {
+                    stack.remove(stack.size() - 1);
+                    continue;
+                }
+                Commit commit = commits.get(top);
+                String next = null;
+                for (String parent: new String[] {commit.getParentSha1(),
+                        commit.getParentSha2()}) {
+                    if (next == null && commits.containsKey(parent)
+                            && !done.contains(parent)) {
+                        next = parent;
+                    }
+                }
+                if (next == null) {
+                    done.add(top);
+                    result.add(commit);
+                    stack.remove(stack.size() - 1);
+                } else {
+                    stack.add(next);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Returns the position the commit SHA1 will have once the commits
+     *  at POSITIONS are added and those already present are MOVED, or
+     *  NONE if it is in neither. */
+    private int position(String sha1, HashMap<String, Integer> positions,
+                         int[] moved) {
+        if (positions.containsKey(sha1)) {
+            return positions.get(sha1);
+        }
+        int pos = find(sha1);
+        return pos == NONE ? NONE : moved[pos];
+    }
+
+    private ByteBuffer slice(int from, int to) {
+        ByteBuffer view = _map.duplicate();
+        view.limit(to);
+        view.position(from);
+        return view;
+    }
+
+    private int compare(int i, byte[] raw) {
+        int offset = HEADER + i * ID_BYTES;
+        for (int k = 0; k < ID_BYTES; k += 1) {
+            int cmp = (_map.get(offset + k) & 0xff) - (raw[k] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+    private int insertionPoint(byte[] raw) {
+        int first = raw[0] & 0xff;
+        int lo = fanout(first - 1);
+        int hi = fanout(first);
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compare(mid, raw) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** Atomically replaces the graph file with CONTENTS. */
+    private void write(byte[] contents) {
+        File temp = new File(_file.getPath() + ".lock");
+        Utils.writeContents(temp, contents);
+        try {
+            Files.move(temp.toPath(), _file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        _map = null;
+    }
+}
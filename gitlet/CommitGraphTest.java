@@ -0,0 +1,213 @@
+package gitlet;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/** Tests of the commit graph: its records, merge bases and ancestry,
+ *  checked against sets of ancestors found by walking every parent. */
+public class CommitGraphTest {
+
+    @Rule
+    public TemporaryFolder _tmp = new TemporaryFolder();
+
+    /** the graph file. */
+    private File _file;
+
+    /** commits made so far, by name, in the order made. */
+    private HashMap<String, Commit> _commits;
+
+    /** names of the commits, in the order made. */
+    private List<String> _names;
+
+    @Before
+    public void setUp() throws IOException {
+        _file = new File(_tmp.newFolder(), "commit-graph");
+        _commits = new HashMap<String, Commit>();
+        _names = new ArrayList<String>();
+    }
+
+    /** Makes the commit NAME with PARENTS, named, the first first. */
+    private Commit commit(String name, String... parents) {
+        Commit commit = Commit.of(Utils.sha1(name), Utils.sha1("tree " + name),
+                parents.length > 0 ? _commits.get(parents[0]).getSha1() : null,
+                parents.length > 1 ? _commits.get(parents[1]).getSha1() : null,
+                "Thu Jan 1 00:00:00 1970 -0800", name);
+        _commits.put(name, commit);
+        _names.add(name);
+        return commit;
+    }
+
+    /** Returns the names of NAME and every commit it can reach. */
+    private Set<String> ancestors(String name) {
+        Set<String> result = new HashSet<String>();
+        List<String> stack = new ArrayList<String>(List.of(name));
+        while (!stack.isEmpty()) {
+            String top = stack.remove(stack.size() - 1);
+            if (!result.add(top)) {
+                continue;
+            }
+            for (String other: _names) {
+                String sha1 = _commits.get(other).getSha1();
+                if (sha1.equals(_commits.get(top).getParentSha1())
+                        || sha1.equals(_commits.get(top).getParentSha2())) {
+                    stack.add(other);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Returns the common ancestors of A and B that no other common
+     *  ancestor can reach. */
+    private Set<String> bestBases(String a, String b) {
+        Set<String> common = ancestors(a);
+        common.retainAll(ancestors(b));
+        Set<String> result = new HashSet<String>(common);
+        for (String base: common) {
+            Set<String> below = ancestors(base);
+            below.remove(base);
+            result.removeAll(below);
+        }
+        return result;
+    }
+
+    /** Adds the commits made so far to a graph, those from index SPLIT on
+     *  in a second batch, and returns the graph read again. */
+    private CommitGraph graph(int split) {
+        List<Commit> commits = new ArrayList<Commit>();
+        for (String name: _names) {
+            commits.add(_commits.get(name));
+        }
+        CommitGraph graph = new CommitGraph(_file);
+        graph.add(commits.subList(0, split));
+        graph.add(commits.subList(split, commits.size()));
+        graph.add(commits);
+        return new CommitGraph(_file);
+    }
+
+    /** Checks the records of GRAPH and every merge base and ancestry in
+     *  it against walks of the commits made. */
+    private void check(CommitGraph graph) {
+        assertEquals(_names.size(), graph.size());
+        HashMap<String, Integer> generations = new HashMap<String, Integer>();
+        for (String name: _names) {
+            Commit commit = _commits.get(name);
+            int pos = graph.find(commit.getSha1());
+            assertEquals(commit.getSha1(), graph.id(pos));
+            assertEquals(commit.getTreeSha1(), graph.tree(pos));
+            assertEquals(graph.find(commit.getParentSha1()),
+                    graph.parent1(pos));
+            assertEquals(graph.find(commit.getParentSha2()),
+                    graph.parent2(pos));
+            int generation = 1;
+            for (String parent: _names) {
+                String sha1 = _commits.get(parent).getSha1();
+                if (sha1.equals(commit.getParentSha1())
+                        || sha1.equals(commit.getParentSha2())) {
+                    generation = Math.max(generation,
+                            generations.get(parent) + 1);
+                }
+            }
+            generations.put(name, generation);
+            assertEquals(generation, graph.generation(pos));
+        }
+        for (String a: _names) {
+            int posA = graph.find(_commits.get(a).getSha1());
+            for (String b: _names) {
+                int posB = graph.find(_commits.get(b).getSha1());
+                assertEquals(a + " in " + b, ancestors(b).contains(a),
+                        graph.isAncestor(posA, posB));
+                Set<String> bases = bestBases(a, b);
+                int base = graph.mergeBase(posA, posB);
+                if (bases.isEmpty()) {
+                    assertEquals(CommitGraph.NONE, base);
+                } else {
+                    assertTrue(a + " and " + b, bases.contains(
+                            name(graph.id(base))));
+                }
+            }
+        }
+    }
+
+    /** Returns the name of the commit SHA1. */
+    private String name(String sha1) {
+        for (String name: _names) {
+            if (_commits.get(name).getSha1().equals(sha1)) {
+                return name;
+            }
+        }
+        return null;
+    }
+
+    @Test
+    public void fastForwardHistory() {
+        commit("root");
+        commit("a1", "root");
+        commit("a2", "a1");
+        commit("b1", "a2");
+        commit("b2", "b1");
+        commit("b3", "b2");
+        CommitGraph graph = graph(3);
+        check(graph);
+        int a2 = graph.find(_commits.get("a2").getSha1());
+        int b3 = graph.find(_commits.get("b3").getSha1());
+        assertEquals(a2, graph.mergeBase(a2, b3));
+        assertEquals(a2, graph.mergeBase(b3, a2));
+        assertTrue(graph.isAncestor(a2, b3));
+        assertFalse(graph.isAncestor(b3, a2));
+    }
+
+    @Test
+    public void crissCrossHistory() {
+        commit("root");
+        commit("a1", "root");
+        commit("b1", "root");
+        commit("a2", "a1", "b1");
+        commit("b2", "b1", "a1");
+        commit("a3", "a2");
+        commit("b3", "b2");
+        CommitGraph graph = graph(4);
+        check(graph);
+        assertEquals(Set.of("a1", "b1"), bestBases("a3", "b3"));
+    }
+
+    @Test
+    public void randomHistories() {
+        Random random = new Random(10);
+        for (int trial = 0; trial < 20; trial += 1) {
+            _file.delete();
+            _commits.clear();
+            _names.clear();
+            for (int i = 0; i < 40; i += 1) {
+                String name = trial + "." + i;
+                if (i == 0 || random.nextInt(10) == 0) {
+                    commit(name);
+                } else if (i > 1 && random.nextInt(3) == 0) {
+                    String p1 = _names.get(random.nextInt(i));
+                    String p2 = _names.get(random.nextInt(i));
+                    if (p1.equals(p2)) {
+                        commit(name, p1);
+                    } else {
+                        commit(name, p1, p2);
+                    }
+                } else {
+                    commit(name, _names.get(i - 1 - random.nextInt(
+                            Math.min(i, 3))));
+                }
+            }
+            check(graph(random.nextInt(_names.size() + 1)));
+        }
+    }
+}
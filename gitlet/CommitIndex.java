@@ -0,0 +1,230 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/** Sorted on-disk index of every commit id, used to resolve abbreviated
+ *  ids in O(log n). The file holds a magic number and version, a
+ *  256-entry fanout table (fanout[b] is the number of ids whose first
+ *  byte is at most b) and then the raw 20-byte ids in sorted order.
+ *  It is read through a memory map. */
+public class CommitIndex {
+
+    /** magic number at the start of the index, "CIDX". */
+    private static final int MAGIC = 0x43494458;
+
+    /** version of the index layout. */
+    private static final int VERSION = 1;
+
+    /** number of raw bytes in an id. */
+    static final int ID_BYTES = ObjectStore.UID_LENGTH / 2;
+
+    /** bytes before the first id: magic, version and fanout table. */
+    private static final int HEADER = 8 + 256 * 4;
+
+    /** returned by resolve when a prefix matches more than one id. */
+    static final String AMBIGUOUS = "ambiguous";
+
+    /** the index file. */
+    private File _file;
+
+    /** mapped contents of _file, or null before the first lookup. */
+    private ByteBuffer _map;
+
+    /** stamp of _file when _map was loaded. */
+    private String _stamp;
+
+    /** number of ids in the index. */
+    private int _size;
+
+    public CommitIndex(File file) {
+        _file = file;
+    }
+
+    /** Forgets the loaded index if the file has changed on disk since. */
+    public void refresh() {
+        if (_map != null && !FileStamp.of(_file).equals(_stamp)) {
+            _map = null;
+        }
+    }
+
+    private void load() {
+        if (_map != null) {
+            return;
+        }
+        _stamp = FileStamp.of(_file);
+        if (!_file.exists()) {
+            _map = ByteBuffer.allocate(HEADER);
+            _map.putInt(0, MAGIC);
+            _map.putInt(4, VERSION);
+            _size = 0;
+            return;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(_file, "r");
+             FileChannel channel = raf.getChannel()) {
+            _map = channel.map(FileChannel.MapMode.READ_ONLY,
+                    0, channel.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (_map.getInt(0) != MAGIC || _map.getInt(4) != VERSION) {
+            throw new IllegalArgumentException("corrupt commit index");
+        }
+        _size = fanout(255);
+    }
+
+    private int fanout(int b) {
+        if (b < 0) {
+            return 0;
+        }
+        return _map.getInt(8 + 4 * b);
+    }
+
+    public int size() {
+        load();
+        return _size;
+    }
+
+    /** Returns the I-th smallest id. */
+    public String get(int i) {
+        load();
+        return ObjectStore.hexId(_map, HEADER + i * ID_BYTES);
+    }
+
+    /** Compares the id at position I with the hex digits NIBBLES,
+     *  looking only at the first NIBBLES.length digits of the id. */
+    private int compare(int i, int[] nibbles) {
+        int offset = HEADER + i * ID_BYTES;
+        for (int k = 0; k < nibbles.length; k += 1) {
+            int b = _map.get(offset + k / 2) & 0xff;
+            int nibble = k % 2 == 0 ? b >> 4 : b & 0xf;
+            if (nibble != nibbles[k]) {
+                return nibble - nibbles[k];
+            }
+        }
+        return 0;
+    }
+
+    /** Returns the full id starting with PREFIX, null if there is none,
+     *  or AMBIGUOUS if more than one id starts with PREFIX. */
+    public String resolve(String prefix) {
+        if (prefix == null || prefix.isEmpty()
+                || prefix.length() > ObjectStore.UID_LENGTH) {
+            return null;
+        }
+        int[] nibbles = new int[prefix.length()];
+        for (int k = 0; k < nibbles.length; k += 1) {
+            nibbles[k] = Character.digit(prefix.charAt(k), 16);
+            if (nibbles[k] < 0) {
+                return null;
+            }
+        }
+        load();
+        int lo;
+        int hi;
+        if (nibbles.length == 1) {
+            lo = fanout(nibbles[0] * 16 - 1);
+            hi = fanout(nibbles[0] * 16 + 15);
+        } else {
+            int first = nibbles[0] * 16 + nibbles[1];
+            lo = fanout(first - 1);
+            hi = fanout(first);
+        }
+        int end = hi;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compare(mid, nibbles) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        if (lo == end || compare(lo, nibbles) != 0) {
+            return null;
+        }
+        if (lo + 1 < end && compare(lo + 1, nibbles) == 0) {
+            return AMBIGUOUS;
+        }
+        return get(lo);
+    }
+
+    public boolean contains(String sha1) {
+        return sha1 != null && sha1.length() == ObjectStore.UID_LENGTH
+                && sha1.equals(resolve(sha1));
+    }
+
+    /** Inserts SHA1 into the index, rewriting the file in place of the
+     *  old one. Does nothing if SHA1 is already present. */
+    public void add(String sha1) {
+        if (contains(sha1)) {
+            return;
+        }
+        byte[] raw = ObjectStore.rawId(sha1);
+        int pos = insertionPoint(raw);
+        ByteBuffer out = ByteBuffer.allocate(
+                HEADER + (_size + 1) * ID_BYTES);
+        out.putInt(MAGIC);
+        out.putInt(VERSION);
+        int first = raw[0] & 0xff;
+        for (int b = 0; b < 256; b += 1) {
+            out.putInt(fanout(b) + (b >= first ? 1 : 0));
+        }
+        out.put(ids(0, pos));
+        out.put(raw);
+        out.put(ids(pos, _size));
+        write(out.array());
+    }
+
+    /** Returns a view of the ids at positions [FROM, TO). */
+    private ByteBuffer ids(int from, int to) {
+        ByteBuffer view = _map.duplicate();
+        view.limit(HEADER + to * ID_BYTES);
+        view.position(HEADER + from * ID_BYTES);
+        return view;
+    }
+
+    private int compareRaw(int i, byte[] raw) {
+        int offset = HEADER + i * ID_BYTES;
+        for (int k = 0; k < ID_BYTES; k += 1) {
+            int cmp = (_map.get(offset + k) & 0xff) - (raw[k] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+    private int insertionPoint(byte[] raw) {
+        int first = raw[0] & 0xff;
+        int lo = fanout(first - 1);
+        int hi = fanout(first);
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compareRaw(mid, raw) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** Atomically replaces the index file with CONTENTS. */
+    private void write(byte[] contents) {
+        File temp = new File(_file.getPath() + ".lock");
+        Utils.writeContents(temp, contents);
+        try {
+            Files.move(temp.toPath(), _file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        _map = null;
+    }
+}
@@ -0,0 +1,152 @@
+package gitlet;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/** Tests of the sorted commit index and its resolution of prefixes. */
+public class CommitIndexTest {
+
+    @Rule
+    public TemporaryFolder _tmp = new TemporaryFolder();
+
+    /** the index file. */
+    private File _file;
+
+    @Before
+    public void setUp() throws IOException {
+        _file = new File(_tmp.newFolder(), "commit-index");
+    }
+
+    /** Returns the id made of FIRST followed by REST repeated. */
+    private static String id(String first, char rest) {
+        return first + String.valueOf(rest).repeat(
+                ObjectStore.UID_LENGTH - first.length());
+    }
+
+    /** Returns what resolving PREFIX among IDS should give. */
+    private static String naive(TreeSet<String> ids, String prefix) {
+        List<String> matches = new ArrayList<String>();
+        for (String sha1: ids) {
+            if (sha1.startsWith(prefix)) {
+                matches.add(sha1);
+            }
+        }
+        if (matches.isEmpty()) {
+            return null;
+        }
+        return matches.size() == 1 ? matches.get(0) : CommitIndex.AMBIGUOUS;
+    }
+
+    @Test
+    public void prefixesResolveAsAmongAllIds() {
+        Random random = new Random(2);
+        CommitIndex index = new CommitIndex(_file);
+        TreeSet<String> ids = new TreeSet<String>();
+        for (int i = 0; i < 300; i += 1) {
+            String sha1 = Utils.sha1("commit " + random.nextInt(1000));
+            index.add(sha1);
+            ids.add(sha1);
+        }
+        assertEquals(ids.size(), index.size());
+        assertEquals(new ArrayList<String>(ids), all(index));
+        for (String sha1: ids) {
+            assertTrue(index.contains(sha1));
+            for (int length = 1; length <= 8; length += 1) {
+                String prefix = sha1.substring(0, length);
+                assertEquals(naive(ids, prefix), index.resolve(prefix));
+            }
+        }
+        for (int trial = 0; trial < 2000; trial += 1) {
+            String prefix = Utils.sha1("other " + trial)
+                    .substring(0, random.nextInt(6) + 1);
+            assertEquals(naive(ids, prefix), index.resolve(prefix));
+        }
+    }
+
+    @Test
+    public void uniqueAmbiguousAndMissingPrefixes() {
+        CommitIndex index = new CommitIndex(_file);
+        String a = id("12ab", '0');
+        String b = id("12ac", '0');
+        String c = id("3", '7');
+        for (String sha1: new String[] {a, b, c, a}) {
+            index.add(sha1);
+        }
+        assertEquals(3, index.size());
+        assertEquals(CommitIndex.AMBIGUOUS, index.resolve("1"));
+        assertEquals(CommitIndex.AMBIGUOUS, index.resolve("12a"));
+        assertEquals(a, index.resolve("12ab"));
+        assertEquals(b, index.resolve("12AC"));
+        assertEquals(c, index.resolve("3"));
+        assertEquals(c, index.resolve(c));
+        assertNull(index.resolve("12ad"));
+        assertNull(index.resolve("2"));
+        assertNull(index.resolve("4"));
+        assertNull(index.resolve(""));
+        assertNull(index.resolve(null));
+        assertNull(index.resolve("12xz"));
+        assertNull(index.resolve(c + "7"));
+        assertFalse(index.contains("3"));
+        assertFalse(index.contains(id("3", '8')));
+    }
+
+    @Test
+    public void idsAtTheFanoutBoundaries() {
+        CommitIndex index = new CommitIndex(_file);
+        String[] ids = {id("00", '0'), id("00", 'f'), id("01", '0'),
+                        id("fe", 'f'), id("ff", '0'), id("ff", 'f')};
+        for (int i = ids.length - 1; i >= 0; i -= 1) {
+            index.add(ids[i]);
+        }
+        assertEquals(List.of(ids), all(index));
+        assertEquals(CommitIndex.AMBIGUOUS, index.resolve("0"));
+        assertEquals(CommitIndex.AMBIGUOUS, index.resolve("00"));
+        assertEquals(ids[0], index.resolve("000"));
+        assertEquals(ids[1], index.resolve("00f"));
+        assertEquals(ids[2], index.resolve("01"));
+        assertEquals(ids[3], index.resolve("fe"));
+        assertEquals(CommitIndex.AMBIGUOUS, index.resolve("f"));
+        assertEquals(CommitIndex.AMBIGUOUS, index.resolve("ff"));
+        assertEquals(ids[4], index.resolve("ff0"));
+        assertEquals(ids[5], index.resolve("fff"));
+        assertEquals(ids[5], index.resolve(ids[5]));
+        assertNull(index.resolve("02"));
+        assertNull(index.resolve("fd"));
+    }
+
+    @Test
+    public void emptyAndReopenedIndexes() {
+        CommitIndex index = new CommitIndex(_file);
+        assertEquals(0, index.size());
+        assertNull(index.resolve("0"));
+        assertNull(index.resolve("f"));
+        index.add(id("ab", '1'));
+        index.add(id("cd", '2'));
+        CommitIndex reopened = new CommitIndex(_file);
+        assertEquals(List.of(id("ab", '1'), id("cd", '2')), all(reopened));
+        assertEquals(id("cd", '2'), reopened.resolve("c"));
+        reopened.add(id("ab", '0'));
+        index.refresh();
+        assertEquals(CommitIndex.AMBIGUOUS, index.resolve("ab"));
+        assertEquals(3, index.size());
+    }
+
+    /** Returns the ids in INDEX, in order. */
+    private static List<String> all(CommitIndex index) {
+        List<String> result = new ArrayList<String>();
+        for (int i = 0; i < index.size(); i += 1) {
+            result.add(index.get(i));
+        }
+        return result;
+    }
+}
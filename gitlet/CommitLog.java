@@ -0,0 +1,252 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/** Append-only log of the metadata of every commit, so global-log can
+ *  print history without opening any commit. .gitlet/commit-log holds a
+ *  magic number and version and then one fixed-size record per commit,
+ *  in the order they were made: its raw id, the raw ids of its parents
+ *  (zeros for none), its time in seconds and the offset of its text in
+ *  .gitlet/commit-log.text, which holds its date line and message
+ *  (each a varint length and UTF-8 bytes). Text is appended before the
+ *  record that points at it, and a record cut short by a crash is
+ *  ignored and then overwritten, so every complete record is valid.
+ *  Both files are read through memory maps. */
+public class CommitLog {
+
+    /** magic number at the start of the log, "CLOG". */
+    private static final int MAGIC = 0x434c4f47;
+
+    /** version of the log layout. */
+    private static final int VERSION = 1;
+
+    /** bytes before the first record. */
+    private static final int HEADER = 8;
+
+    /** number of raw bytes in an id. */
+    private static final int ID_BYTES = ObjectStore.UID_LENGTH / 2;
+
+    /** bytes in a record: id, two parents, time and text offset. */
+    private static final int RECORD = 3 * ID_BYTES + 8 + 8;
+
+    /** the record and text files. */
+    private File _file, _text;
+
+    /** mapped contents of _file and _text, or null before the first
+     *  lookup. */
+    private ByteBuffer _records, _texts;
+
+    /** stamp of _file when it was mapped. */
+    private String _stamp;
+
+    public CommitLog(File file) {
+        _file = file;
+        _text = new File(file.getPath() + ".text");
+    }
+
+    /** Forgets the mapped log if it has changed on disk since. */
+    public void refresh() {
+        if (_records != null && !FileStamp.of(_file).equals(_stamp)) {
+            _records = null;
+        }
+    }
+
+    private void load() {
+        if (_records != null) {
+            return;
+        }
+        _stamp = FileStamp.of(_file);
+        if (!_file.exists()) {
+            _records = ByteBuffer.allocate(0);
+            _texts = ByteBuffer.allocate(0);
+            return;
+        }
+        _records = map(_file);
+        _texts = map(_text);
+        if (_records.capacity() < HEADER || _records.getInt(0) != MAGIC
+                || _records.getInt(4) != VERSION) {
+            throw new IllegalArgumentException("corrupt commit log");
+        }
+    }
+
+    private static ByteBuffer map(File file) {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            return channel.map(FileChannel.MapMode.READ_ONLY,
+                    0, channel.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the number of complete records. */
+    public int size() {
+        load();
+        return Math.max(0, (_records.capacity() - HEADER) / RECORD);
+    }
+
+    /** Appends the record of COMMIT. */
+    public void add(Commit commit) {
+        ByteArrayOutputStream text = new ByteArrayOutputStream();
+        ObjectStore.writeString(text, commit.getTime());
+        ObjectStore.writeString(text, commit.getMessage());
+        try (FileChannel texts = FileChannel.open(_text.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileChannel records = FileChannel.open(_file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            long offset = texts.size();
+            texts.write(ByteBuffer.wrap(text.toByteArray()), offset);
+            long end = records.size() < HEADER ? 0
+                    : records.size() - (records.size() - HEADER) % RECORD;
+            ByteBuffer out = ByteBuffer.allocate(HEADER + RECORD);
+            if (end == 0) {
+                out.putInt(MAGIC).putInt(VERSION);
+            }
+            record(out, commit, offset);
+            out.flip();
+            records.truncate(end);
+            records.write(out, end);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        _records = null;
+    }
+
+    /** Replaces the whole log with the records of COMMITS. */
+    public void rebuild(List<Commit> commits) {
+        ByteArrayOutputStream text = new ByteArrayOutputStream();
+        ByteBuffer out = ByteBuffer.allocate(
+                HEADER + commits.size() * RECORD);
+        out.putInt(MAGIC).putInt(VERSION);
+        for (Commit commit: commits) {
+            record(out, commit, text.size());
+            ObjectStore.writeString(text, commit.getTime());
+            ObjectStore.writeString(text, commit.getMessage());
+        }
+        replace(_text, text.toByteArray());
+        replace(_file, out.array());
+        _records = null;
+    }
+
+    /** Puts the record of COMMIT, whose text is at OFFSET, in OUT. */
+    private static void record(ByteBuffer out, Commit commit, long offset) {
+        out.put(ObjectStore.rawId(commit.getSha1()));
+        for (String parent: new String[] {commit.getParentSha1(),
+                                          commit.getParentSha2()}) {
+            if (parent == null) {
+                out.put(new byte[ID_BYTES]);
+            } else {
+                out.put(ObjectStore.rawId(parent));
+            }
+        }
+        out.putLong(commit.getTimestamp()).putLong(offset);
+    }
+
+    /** Atomically replaces FILE with CONTENTS. */
+    private static void replace(File file, byte[] contents) {
+        File temp = new File(file.getPath() + ".lock");
+        Utils.writeContents(temp, contents);
+        try {
+            Files.move(temp.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the records in the order they were appended. */
+    public Iterator<History.Entry> entries() {
+        load();
+        ByteBuffer records = _records;
+        ByteBuffer texts = _texts;
+        int size = size();
+        return new Iterator<History.Entry>() {
+            private int _next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return _next < size;
+            }
+
+            @Override
+            public History.Entry next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                _next += 1;
+                return new Record(records, texts,
+                        HEADER + (_next - 1) * RECORD);
+            }
+        };
+    }
+
+    /** The record of one commit, read from the mapped files. */
+    private static class Record implements History.Entry {
+        /** the mapped records and text. */
+        private ByteBuffer _records, _texts;
+
+        /** offset of this record in _records. */
+        private int _offset;
+
+        Record(ByteBuffer records, ByteBuffer texts, int offset) {
+            _records = records;
+            _texts = texts;
+            _offset = offset;
+        }
+
+        @Override
+        public String id() {
+            return ObjectStore.hexId(_records, _offset);
+        }
+
+        @Override
+        public long time() {
+            return _records.getLong(_offset + 3 * ID_BYTES);
+        }
+
+        @Override
+        public String date() {
+            return text(0);
+        }
+
+        @Override
+        public String message() {
+            return text(1);
+        }
+
+        /** Returns the K-th string of this record's text. */
+        private String text(int k) {
+            int pos = (int) _records.getLong(_offset + 3 * ID_BYTES + 8);
+            for (int i = 0; true; i += 1) {
+                int length = 0;
+                int shift = 0;
+                int b;
+                do {
+                    b = _texts.get(pos) & 0xff;
+                    pos += 1;
+                    length |= (b & 0x7f) << shift;
+                    shift += 7;
+                } while ((b & 0x80) != 0);
+                if (i == k) {
+                    byte[] bytes = new byte[length];
+                    _texts.get(pos, bytes);
+                    return new String(bytes, StandardCharsets.UTF_8);
+                }
+                pos += length;
+            }
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package gitlet;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/** Tests of the append-only log of commit metadata. */
+public class CommitLogTest {
+
+    @Rule
+    public TemporaryFolder _tmp = new TemporaryFolder();
+
+    /** the record file. */
+    private File _file;
+
+    @Before
+    public void setUp() throws IOException {
+        _file = new File(_tmp.newFolder(), "commit-log");
+    }
+
+    /** Returns a commit numbered I, with a message of LENGTH chars. */
+    private static Commit commit(int i, int length) {
+        String message = ("message " + i + " \u00e9\n").repeat(length)
+                .substring(0, length);
+        return Commit.of(Utils.sha1("commit " + i), Utils.sha1("tree"),
+                i == 0 ? null : Utils.sha1("commit " + (i - 1)),
+                i % 3 == 2 ? Utils.sha1("commit 0") : null,
+                "Thu Jan " + (i % 28 + 1) + " 00:00:00 1970 -0800", message);
+    }
+
+    /** Asserts that LOG holds the records of COMMITS, in order. */
+    private static void assertHolds(List<Commit> commits, CommitLog log) {
+        assertEquals(commits.size(), log.size());
+        Iterator<History.Entry> entries = log.entries();
+        for (Commit commit: commits) {
+            assertTrue(entries.hasNext());
+            History.Entry entry = entries.next();
+            assertEquals(commit.getSha1(), entry.id());
+            assertEquals(commit.getTimestamp(), entry.time());
+            assertEquals(commit.getTime(), entry.date());
+            assertEquals(commit.getMessage(), entry.message());
+        }
+        assertFalse(entries.hasNext());
+    }
+
+    @Test
+    public void appendedRecordsSurviveReopening() {
+        List<Commit> commits = new ArrayList<Commit>();
+        CommitLog log = new CommitLog(_file);
+        assertHolds(commits, log);
+        for (int i = 0; i < 10; i += 1) {
+            commits.add(commit(i, i * 40));
+            log.add(commits.get(i));
+        }
+        assertHolds(commits, log);
+        CommitLog reopened = new CommitLog(_file);
+        assertHolds(commits, reopened);
+        for (int i = 10; i < 15; i += 1) {
+            commits.add(commit(i, 300));
+            reopened.add(commits.get(i));
+        }
+        assertHolds(commits, new CommitLog(_file));
+    }
+
+    @Test
+    public void recordCutShortIsIgnoredAndOverwritten() throws IOException {
+        List<Commit> commits = new ArrayList<Commit>();
+        CommitLog log = new CommitLog(_file);
+        for (int i = 0; i < 3; i += 1) {
+            commits.add(commit(i, 20));
+            log.add(commits.get(i));
+        }
+        long length = _file.length();
+        try (RandomAccessFile raf = new RandomAccessFile(_file, "rw")) {
+            raf.setLength(length + 17);
+        }
+        assertHolds(commits, new CommitLog(_file));
+        commits.add(commit(3, 20));
+        log.add(commits.get(3));
+        assertHolds(commits, new CommitLog(_file));
+        assertEquals(length + (length - 8) / 3, _file.length());
+    }
+
+    @Test
+    public void rebuildReplacesTheLog() {
+        CommitLog log = new CommitLog(_file);
+        log.add(commit(7, 10));
+        List<Commit> commits = new ArrayList<Commit>();
+        for (int i = 0; i < 5; i += 1) {
+            commits.add(commit(i, 200));
+        }
+        log.rebuild(commits);
+        assertHolds(commits, log);
+        commits.add(commit(5, 10));
+        log.add(commits.get(5));
+        assertHolds(commits, new CommitLog(_file));
+    }
+
+    @Test
+    public void refreshSeesRecordsAppendedElsewhere() {
+        CommitLog log = new CommitLog(_file);
+        List<Commit> commits = new ArrayList<Commit>(List.of(commit(0, 5)));
+        log.add(commits.get(0));
+        Iterator<History.Entry> before = log.entries();
+        CommitLog other = new CommitLog(_file);
+        commits.add(commit(1, 5));
+        other.add(commits.get(1));
+        log.refresh();
+        assertHolds(commits, log);
+        assertEquals(commits.get(0).getSha1(), before.next().id());
+        assertFalse(before.hasNext());
+    }
+}
@@ -0,0 +1,81 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+/** Settings read from .gitlet/config, a java.util.Properties file of
+ *  "key=value" lines. Missing keys fall back to the given defaults. */
+public class Config {
+
+    /** the config file, found without loading Repo, whose own static
+     *  fields read settings. */
+    private static File _file = Utils.join(
+            new File(System.getProperty("user.dir")), ".gitlet", "config");
+
+    /** loaded settings, or null before the first lookup. */
+    private static Properties _props;
+
+    /** stamp of _file when _props were loaded. */
+    private static String _stamp;
+
+    /** Forgets the loaded settings if the file has changed since. */
+    static synchronized void refresh() {
+        if (_props != null && !FileStamp.of(_file).equals(_stamp)) {
+            _props = null;
+        }
+    }
+
+    private static synchronized Properties props() {
+        if (_props == null) {
+            _props = new Properties();
+            _stamp = FileStamp.of(_file);
+            if (_file.exists()) {
+                try (InputStream in = new FileInputStream(_file)) {
+                    _props.load(in);
+                } catch (IOException excp) {
+                    throw new IllegalArgumentException(excp.getMessage());
+                }
+            }
+        }
+        return _props;
+    }
+
+    public static String get(String key, String def) {
+        return props().getProperty(key, def).trim();
+    }
+
+    public static int getInt(String key, int def) {
+        String value = props().getProperty(key);
+        if (value == null) {
+            return def;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException excp) {
+            return def;
+        }
+    }
+
+    public static long getLong(String key, long def) {
+        String value = props().getProperty(key);
+        if (value == null) {
+            return def;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException excp) {
+            return def;
+        }
+    }
+
+    public static boolean getBoolean(String key, boolean def) {
+        String value = props().getProperty(key);
+        if (value == null) {
+            return def;
+        }
+        return Boolean.parseBoolean(value.trim());
+    }
+}
@@ -0,0 +1,174 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/** A long-running process that serves Gitlet commands for one working
+ *  tree over the Unix domain socket .gitlet/daemon.sock, so commands
+ *  sent by Client reuse a warm JVM and Repo's caches. A request is the
+ *  client's working directory and its arguments, written with
+ *  DataOutputStream; the reply is a series of frames, each a type byte
+ *  and then an int length and that many bytes of standard output (OUT)
+ *  or error (ERR), or an int exit status (EXIT) ending the reply.
+ *  Commands are served one at a time. Before each one, everything Repo
+ *  has loaded from .gitlet is checked against the files on disk and
+ *  reloaded if another process has changed them. */
+public class Daemon {
+
+    /** frame of standard output. */
+    static final int OUT = 1;
+
+    /** frame of standard error. */
+    static final int ERR = 2;
+
+    /** frame ending a reply with the exit status. */
+    static final int EXIT = 0;
+
+    /** true while a command is being served. */
+    private static boolean _serving;
+
+    /** Returns true if the current command is being served by a daemon,
+     *  rather than being the whole process. */
+    static boolean serving() {
+        return _serving;
+    }
+
+    /** Serves commands on SOCKET until killed. */
+    static void serve(File socket) {
+        if (Client.connect(socket) != null) {
+            System.out.println("A daemon is already running.");
+            return;
+        }
+        socket.delete();
+        try (ServerSocketChannel server = ServerSocketChannel.open(
+                StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(socket.toPath()));
+            Runtime.getRuntime().addShutdownHook(
+                    new Thread(() -> socket.delete()));
+            while (true) {
+                try (SocketChannel channel = server.accept()) {
+                    serve(channel);
+                } catch (IOException excp) {
+                    continue;
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Reads one request from CHANNEL and runs it, sending back its
+     *  output and exit status. */
+    private static void serve(SocketChannel channel) throws IOException {
+        DataInputStream in = new DataInputStream(
+                Channels.newInputStream(channel));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Channels.newOutputStream(channel)));
+        String dir = in.readUTF();
+        String[] args = new String[in.readInt()];
+        for (int i = 0; i < args.length; i += 1) {
+            args[i] = in.readUTF();
+        }
+        PrintStream stdout = System.out;
+        PrintStream stderr = System.err;
+        int status = 0;
+        try (PrintStream cmdOut = new PrintStream(new Frames(out, OUT));
+             PrintStream cmdErr = new PrintStream(new Frames(out, ERR))) {
+            System.setOut(cmdOut);
+            System.setErr(cmdErr);
+            _serving = true;
+            try {
+                if (!new File(dir).equals(Repo.WORKDIRECT)) {
+                    System.err.println("The daemon serves "
+                            + Repo.WORKDIRECT + ".");
+                    status = 1;
+                } else if (args.length > 0 && Client.local(args[0])) {
+                    System.err.println("The daemon does not serve "
+                            + args[0] + ".");
+                    status = 1;
+                } else {
+                    Repo.refresh();
+                    Main.main(args);
+                }
+            } catch (Exit excp) {
+                status = excp.status();
+            } catch (Throwable excp) {
+                System.err.println(excp);
+                status = 1;
+            } finally {
+                _serving = false;
+                System.setOut(stdout);
+                System.setErr(stderr);
+            }
+        }
+        out.writeByte(EXIT);
+        out.writeInt(status);
+        out.flush();
+    }
+
+    /** Thrown in place of exiting the JVM when a served command ends. */
+    static class Exit extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        /** the exit status. */
+        private int _status;
+
+        Exit(int status) {
+            super(null, null, false, false);
+            _status = status;
+        }
+
+        int status() {
+            return _status;
+        }
+    }
+
+    /** An OutputStream sending what is written to it as frames of TYPE,
+     *  flushing the connection whenever it is flushed. */
+    private static class Frames extends OutputStream {
+        /** the connection. */
+        private DataOutputStream _out;
+
+        /** frame type of the bytes written. */
+        private int _type;
+
+        Frames(DataOutputStream out, int type) {
+            _out = out;
+            _type = type;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len > 0) {
+                _out.writeByte(_type);
+                _out.writeInt(len);
+                _out.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            _out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
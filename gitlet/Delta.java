@@ -0,0 +1,159 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+/** Delta encoding of one byte array against another. A delta starts
+ *  with the base and result sizes as varints, followed by instructions:
+ *  INSERT (a varint length and that many literal bytes) or COPY (a varint
+ *  offset and length into the base). Matches are found by indexing the
+ *  base in BLOCK-byte blocks and sliding a rolling hash over the target,
+ *  so creating a delta is linear in the sizes of the two arrays. */
+public class Delta {
+
+    /** size of the base blocks that are indexed. */
+    private static final int BLOCK = 16;
+
+    /** base of the rolling hash. */
+    private static final int PRIME = 31;
+
+    /** PRIME to the power BLOCK - 1, to drop a byte from the hash. */
+    private static final int TOP = pow(PRIME, BLOCK - 1);
+
+    /** most candidates checked for each hash. */
+    private static final int MAX_CHAIN = 16;
+
+    /** instruction code for literal bytes. */
+    private static final int INSERT = 0;
+
+    /** instruction code for a range of the base. */
+    private static final int COPY = 1;
+
+    /** Returns a delta that turns BASE into TARGET. */
+    public static byte[] create(byte[] base, byte[] target) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ObjectStore.writeVarint(out, base.length);
+        ObjectStore.writeVarint(out, target.length);
+        int blocks = base.length / BLOCK;
+        int bits = 1;
+        while ((1 << bits) < 2 * blocks) {
+            bits += 1;
+        }
+        int[] head = new int[1 << bits];
+        int[] next = new int[Math.max(blocks, 1)];
+        Arrays.fill(head, -1);
+        for (int b = blocks - 1; b >= 0; b -= 1) {
+            int bucket = bucket(hash(base, b * BLOCK), bits);
+            next[b] = head[bucket];
+            head[bucket] = b;
+        }
+        int insertStart = 0;
+        int i = 0;
+        int h = target.length >= BLOCK ? hash(target, 0) : 0;
+        while (blocks > 0 && i + BLOCK <= target.length) {
+            int bestLen = 0;
+            int bestOff = 0;
+            int tries = 0;
+            for (int c = head[bucket(h, bits)]; c >= 0 && tries < MAX_CHAIN;
+                 c = next[c], tries += 1) {
+                int len = matchLength(base, c * BLOCK, target, i);
+                if (len > bestLen) {
+                    bestLen = len;
+                    bestOff = c * BLOCK;
+                }
+            }
+            if (bestLen >= BLOCK) {
+                while (bestOff > 0 && i > insertStart
+                        && base[bestOff - 1] == target[i - 1]) {
+                    bestOff -= 1;
+                    i -= 1;
+                    bestLen += 1;
+                }
+                writeInsert(out, target, insertStart, i);
+                out.write(COPY);
+                ObjectStore.writeVarint(out, bestOff);
+                ObjectStore.writeVarint(out, bestLen);
+                i += bestLen;
+                insertStart = i;
+                if (i + BLOCK <= target.length) {
+                    h = hash(target, i);
+                }
+            } else {
+                if (i + BLOCK < target.length) {
+                    h = (h - target[i] * TOP) * PRIME + target[i + BLOCK];
+                }
+                i += 1;
+            }
+        }
+        writeInsert(out, target, insertStart, target.length);
+        return out.toByteArray();
+    }
+
+    /** Returns the result of applying DELTA to BASE. */
+    public static byte[] apply(byte[] base, byte[] delta) {
+        int[] pos = {0};
+        if (ObjectStore.readVarint(delta, pos) != base.length) {
+            throw new IllegalArgumentException("delta base size mismatch");
+        }
+        byte[] result = new byte[(int) ObjectStore.readVarint(delta, pos)];
+        int size = 0;
+        while (pos[0] < delta.length) {
+            int op = delta[pos[0]];
+            pos[0] += 1;
+            if (op == COPY) {
+                int offset = (int) ObjectStore.readVarint(delta, pos);
+                int len = (int) ObjectStore.readVarint(delta, pos);
+                System.arraycopy(base, offset, result, size, len);
+                size += len;
+            } else {
+                int len = (int) ObjectStore.readVarint(delta, pos);
+                System.arraycopy(delta, pos[0], result, size, len);
+                pos[0] += len;
+                size += len;
+            }
+        }
+        if (size != result.length) {
+            throw new IllegalArgumentException("delta result size mismatch");
+        }
+        return result;
+    }
+
+    private static int matchLength(byte[] base, int off, byte[] target,
+                                   int start) {
+        int len = 0;
+        while (off + len < base.length && start + len < target.length
+                && base[off + len] == target[start + len]) {
+            len += 1;
+        }
+        return len;
+    }
+
+    private static void writeInsert(ByteArrayOutputStream out,
+                                    byte[] target, int from, int to) {
+        if (to > from) {
+            out.write(INSERT);
+            ObjectStore.writeVarint(out, to - from);
+            out.write(target, from, to - from);
+        }
+    }
+
+    private static int hash(byte[] bytes, int start) {
+        int h = 0;
+        for (int k = 0; k < BLOCK; k += 1) {
+            h = h * PRIME + bytes[start + k];
+        }
+        return h;
+    }
+
+    private static int bucket(int hash, int bits) {
+        return (hash * 0x9E3779B1) >>> (32 - bits);
+    }
+
+    private static int pow(int base, int exp) {
+        int result = 1;
+        for (int i = 0; i < exp; i += 1) {
+            result *= base;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,134 @@
+package gitlet;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/** Tests of delta encoding and of blobs stored as deltas in packs. */
+public class DeltaTest {
+
+    @Rule
+    public TemporaryFolder _tmp = new TemporaryFolder();
+
+    private static byte[] random(Random random, int size) {
+        byte[] bytes = new byte[size];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    /** Returns BASE with EDITS random insertions, deletions and
+     *  replacements of up to 100 bytes each. */
+    private static byte[] edit(Random random, byte[] base, int edits) {
+        byte[] result = base;
+        for (int e = 0; e < edits; e += 1) {
+            int at = random.nextInt(result.length + 1);
+            int len = random.nextInt(100) + 1;
+            byte[] insert = random(random, random.nextInt(3) == 0 ? 0 : len);
+            int cut = random.nextInt(3) == 1 ? 0
+                    : Math.min(len, result.length - at);
+            byte[] next = new byte[result.length - cut + insert.length];
+            System.arraycopy(result, 0, next, 0, at);
+            System.arraycopy(insert, 0, next, at, insert.length);
+            System.arraycopy(result, at + cut, next, at + insert.length,
+                    result.length - at - cut);
+            result = next;
+        }
+        return result;
+    }
+
+    private static void assertRoundTrip(byte[] base, byte[] target) {
+        assertArrayEquals(target, Delta.apply(base,
+                Delta.create(base, target)));
+    }
+
+    @Test
+    public void appliesToEditedCopies() {
+        Random random = new Random(8);
+        for (int trial = 0; trial < 200; trial += 1) {
+            byte[] base = random(random, random.nextInt(20000));
+            byte[] target = edit(random, base, random.nextInt(20));
+            assertRoundTrip(base, target);
+        }
+    }
+
+    @Test
+    public void smallEditsGiveSmallDeltas() {
+        Random random = new Random(8);
+        byte[] base = random(random, 100000);
+        byte[] target = edit(random, base, 10);
+        assertTrue(Delta.create(base, target).length < 3000);
+        assertTrue(Delta.create(base, base).length < 20);
+    }
+
+    @Test
+    public void appliesToEmptyAndShortArrays() {
+        Random random = new Random(8);
+        byte[] empty = new byte[0];
+        byte[] some = random(random, 1000);
+        assertRoundTrip(empty, empty);
+        assertRoundTrip(empty, some);
+        assertRoundTrip(some, empty);
+        for (int size = 0; size < 40; size += 1) {
+            byte[] a = random(random, size);
+            assertRoundTrip(a, Arrays.copyOf(a, size + 3));
+            assertRoundTrip(some, a);
+            assertRoundTrip(a, some);
+        }
+    }
+
+    @Test
+    public void appliesToRepetitiveArrays() {
+        byte[] zeros = new byte[50000];
+        byte[] target = Arrays.copyOf(zeros, 70001);
+        target[30000] = 1;
+        target[70000] = 2;
+        assertRoundTrip(zeros, target);
+        byte[] pattern = new byte[40000];
+        for (int i = 0; i < pattern.length; i += 1) {
+            pattern[i] = (byte) (i % 17);
+        }
+        assertRoundTrip(pattern, Arrays.copyOfRange(pattern, 5, 39000));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTheWrongBase() {
+        Random random = new Random(8);
+        byte[] base = random(random, 1000);
+        byte[] delta = Delta.create(base, edit(random, base, 3));
+        Delta.apply(Arrays.copyOf(base, 999), delta);
+    }
+
+    @Test
+    public void repackStoresLikeBlobsAsDeltas() throws IOException {
+        ObjectStore store = new ObjectStore(_tmp.newFolder());
+        Random random = new Random(8);
+        byte[][] versions = new byte[15][];
+        versions[0] = random(random, 20000);
+        for (int v = 1; v < versions.length; v += 1) {
+            versions[v] = edit(random, versions[v - 1], 3);
+            versions[v] = Arrays.copyOf(versions[v],
+                    versions[v].length + 200);
+        }
+        for (byte[] content: versions) {
+            String sha1 = Utils.sha1(content);
+            store.writeContents(ObjectStore.BLOB, sha1, content);
+            Tree.write(store, Map.of("file", sha1));
+        }
+        store.repack();
+        assertTrue(store.looseIds().isEmpty());
+        long stored = 0;
+        for (byte[] content: versions) {
+            String sha1 = Utils.sha1(content);
+            assertArrayEquals(content, store.readContents(sha1));
+            assertEquals(content.length, store.size(sha1));
+            stored += store.storedSize(sha1);
+        }
+        assertTrue(stored < 2 * versions[versions.length - 1].length);
+    }
+}
@@ -0,0 +1,388 @@
+package gitlet;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/** The body of the diff of one file: the hunks turning one version into
+ *  another, printed one char per byte so any content comes out as it is
+ *  stored.
+ *
+ *  A version larger than core.bigFileThreshold bytes (512 MiB by
+ *  default), or with a NUL byte in its first 8000 bytes, is binary, and
+ *  only "Binary files differ" is printed. Versions of at most
+ *  diff.streamThreshold bytes (16 MiB by default) are diffed whole in
+ *  memory by LineDiff. Larger ones are streamed instead: the common
+ *  prefix is skipped a line at a time, and of the rest only the first
+ *  and last diff.windowLines lines (65536 by default) of each side are
+ *  kept, enough to find the common suffix, which is measured by reading
+ *  both again if it is longer than that. If the differing window
+ *  between the two fits in what was kept it is diffed by LineDiff;
+ *  otherwise it is printed as one hunk replacing all its lines, read
+ *  again from both versions. Either way memory is bounded by the window
+ *  and not by the size of the files: a streamed version with a line of
+ *  more than diff.lineBytes bytes (1 MiB by default), or whose window
+ *  holds more than diff.windowBytes bytes (64 MiB by default), is taken
+ *  as binary as well. */
+public class FileDiff {
+
+    /** bytes at the start of a file searched for a NUL byte, as in git. */
+    private static final int BINARY_CHECK = 8000;
+
+    /** size of the buffers lines are read through. */
+    private static final int BUFFER = 1 << 16;
+
+    /** Prints the hunks turning A into B, or that they differ if either
+     *  is binary. */
+    public static void print(Source a, Source b) {
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out,
+                StandardCharsets.ISO_8859_1));
+        try {
+            long big = Config.getLong("core.bigFileThreshold", 512L << 20);
+            long stream = Config.getLong("diff.streamThreshold", 1L << 24);
+            if (a.size() > big || b.size() > big
+                    || a.binary() || b.binary()) {
+                out.write("Binary files differ\n");
+            } else if (a.size() > stream || b.size() > stream) {
+                stream(a, b, Math.max(1,
+                        Config.getInt("diff.windowLines", 1 << 16)),
+                        Config.getLong("diff.lineBytes", 1L << 20),
+                        Config.getLong("diff.windowBytes", 1L << 26), out);
+            } else {
+                List<String> seq1 = LineDiff.lines(a.read());
+                List<String> seq2 = LineDiff.lines(b.read());
+                hunks(LineDiff.diff(seq1, seq2), 0, seq1, seq2, out);
+            }
+            out.flush();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Prints the hunks turning A into B to OUT, holding at most the
+     *  first and last LIMIT lines of each, LIMIT > 0, or that they differ
+     *  if either has a line of more than LINEBYTES bytes or would hold
+     *  more than WINDOWBYTES bytes in those lines. */
+    static void stream(Source a, Source b, int limit, long lineBytes,
+                       long windowBytes, Writer out) throws IOException {
+        int prefix = 0;
+        Window windowA;
+        Window windowB;
+        try (LineReader readA = new LineReader(a.open(), lineBytes);
+             LineReader readB = new LineReader(b.open(), lineBytes)) {
+            String lineA = readA.next();
+            String lineB = readB.next();
+            while (lineA != null && lineA.equals(lineB)) {
+                prefix += 1;
+                lineA = readA.next();
+                lineB = readB.next();
+            }
+            windowA = new Window(readA, lineA, limit, windowBytes);
+            windowB = new Window(readB, lineB, limit, windowBytes);
+            if (readA._tooLong || readB._tooLong
+                    || windowA._full || windowB._full) {
+                out.write("Binary files differ\n");
+                return;
+            }
+        }
+        int suffix = 0;
+        int most = Math.min(windowA.tailSize(), windowB.tailSize());
+        while (suffix < most
+                && windowA.fromEnd(suffix).equals(windowB.fromEnd(suffix))) {
+            suffix += 1;
+        }
+        if (suffix == most && (windowA._count > windowA._head.size()
+                || windowB._count > windowB._head.size())) {
+            suffix = suffix(a, b, prefix, windowA._count, windowB._count);
+        }
+        int lengthA = windowA._count - suffix;
+        int lengthB = windowB._count - suffix;
+        if (lengthA <= windowA._head.size()
+                && lengthB <= windowB._head.size()) {
+            List<String> seq1 = windowA._head.subList(0, lengthA);
+            List<String> seq2 = windowB._head.subList(0, lengthB);
+            hunks(LineDiff.diff(seq1, seq2), prefix, seq1, seq2, out);
+            return;
+        }
+        out.write(header(new int[] {0, lengthA, 0, lengthB}, 0, prefix));
+        out.write('\n');
+        copy(a, prefix, lengthA, "-", out);
+        copy(b, prefix, lengthB, "+", out);
+    }
+
+    /** Returns the number of lines alike at the ends of A and B, which
+     *  have COUNTA and COUNTB lines after their first PREFIX, reading both
+     *  again in step with their ends lined up. */
+    private static int suffix(Source a, Source b, int prefix, int countA,
+                              int countB) throws IOException {
+        int common = Math.min(countA, countB);
+        try (LineReader readA = new LineReader(a.open());
+             LineReader readB = new LineReader(b.open())) {
+            readA.skip(prefix + countA - common);
+            readB.skip(prefix + countB - common);
+            int suffix = 0;
+            for (int i = 0; i < common; i += 1) {
+                if (readA.next().equals(readB.next())) {
+                    suffix += 1;
+                } else {
+                    suffix = 0;
+                }
+            }
+            return suffix;
+        }
+    }
+
+    /** Prints to OUT the LENGTH lines of SOURCE after its first SKIP, each
+     *  after MARK. */
+    private static void copy(Source source, int skip, int length,
+                             String mark, Writer out) throws IOException {
+        try (LineReader in = new LineReader(source.open())) {
+            in.skip(skip);
+            for (int i = 0; i < length; i += 1) {
+                out.write(mark);
+                out.write(in.next());
+                out.write('\n');
+            }
+        }
+    }
+
+    /** Prints to OUT the HUNKS, as returned by LineDiff.diff, turning SEQ1
+     *  into SEQ2, which start OFFSET lines into their files. */
+    private static void hunks(int[] hunks, int offset, List<String> seq1,
+                              List<String> seq2, Writer out)
+            throws IOException {
+        for (int i = 0; i < hunks.length; i += 4) {
+            out.write(header(hunks, i, offset));
+            out.write('\n');
+            for (int k = 0; k < hunks[i + 1]; k += 1) {
+                out.write("-");
+                out.write(seq1.get(hunks[i] + k));
+                out.write('\n');
+            }
+            for (int k = 0; k < hunks[i + 3]; k += 1) {
+                out.write("+");
+                out.write(seq2.get(hunks[i + 2] + k));
+                out.write('\n');
+            }
+        }
+    }
+
+    /** Returns the "@@ -L1,N1 +L2,N2 @@" line of the hunk at I in HUNKS,
+     *  whose sequences start OFFSET lines into their files. */
+    private static String header(int[] hunks, int i, int offset) {
+        return "@@ -" + range(hunks[i] + offset, hunks[i + 1])
+                + " +" + range(hunks[i + 2] + offset, hunks[i + 3]) + " @@";
+    }
+
+    /** Returns the range of COUNT lines from index START, numbered from 1
+     *  unless empty, with the count left out when it is 1. */
+    private static String range(int start, int count) {
+        String result = String.valueOf(count != 0 ? start + 1 : start);
+        if (count != 1) {
+            result += "," + count;
+        }
+        return result;
+    }
+
+    /** One side of a diff: a blob, a working file, or nothing. */
+    public static class Source {
+        /** the store holding _sha1. */
+        private ObjectStore _store;
+
+        /** the blob, or null. */
+        private String _sha1;
+
+        /** the working file, or null. */
+        private File _file;
+
+        /** Returns blob SHA1 of STORE, missing if SHA1 is null. */
+        public static Source blob(ObjectStore store, String sha1) {
+            Source source = new Source();
+            source._store = store;
+            source._sha1 = sha1;
+            return source;
+        }
+
+        /** Returns FILE, missing if it does not exist. */
+        public static Source file(File file) {
+            Source source = new Source();
+            source._file = file;
+            return source;
+        }
+
+        /** Returns the size of the content in bytes, 0 if missing. */
+        public long size() {
+            if (_sha1 != null) {
+                return _store.size(_sha1);
+            } else if (_file != null) {
+                return _file.length();
+            }
+            return 0;
+        }
+
+        /** Returns a stream over the content, empty if missing. */
+        InputStream open() throws IOException {
+            if (_sha1 != null) {
+                return _store.open(_sha1);
+            } else if (_file != null && _file.exists()) {
+                return new FileInputStream(_file);
+            }
+            return new ByteArrayInputStream(new byte[0]);
+        }
+
+        byte[] read() throws IOException {
+            try (InputStream in = open()) {
+                return in.readAllBytes();
+            }
+        }
+
+        /** Returns true if the start of the content holds a NUL byte. */
+        boolean binary() throws IOException {
+            try (InputStream in = open()) {
+                for (byte b: in.readNBytes(BINARY_CHECK)) {
+                    if (b == 0) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+        }
+    }
+
+    /** Reads lines from a stream, split as by LineDiff.lines, up to the
+     *  first that is too long. */
+    private static class LineReader implements Closeable {
+        /** the stream read. */
+        private InputStream _in;
+
+        /** the most bytes in a line. */
+        private long _max;
+
+        /** true once a line of more than _max bytes was met. */
+        private boolean _tooLong;
+
+        /** bytes read from _in and not yet returned. */
+        private byte[] _buf = new byte[BUFFER];
+
+        /** next and end positions of the unread bytes in _buf. */
+        private int _pos, _limit;
+
+        /** A reader of IN, whose lines were already found short enough. */
+        LineReader(InputStream in) {
+            this(in, Long.MAX_VALUE);
+        }
+
+        LineReader(InputStream in, long max) {
+            _in = in;
+            _max = max;
+        }
+
+        /** Returns the next line, without its newline, or null at the end
+         *  of the stream or at a line of more than _max bytes. */
+        String next() throws IOException {
+            StringBuilder line = null;
+            while (!_tooLong) {
+                if (_pos == _limit) {
+                    _pos = 0;
+                    _limit = Math.max(0, _in.read(_buf));
+                    if (_limit == 0) {
+                        return line == null ? null : line.toString();
+                    }
+                }
+                int start = _pos;
+                while (_pos < _limit && _buf[_pos] != '\n') {
+                    _pos += 1;
+                }
+                if ((line == null ? 0 : line.length()) + _pos - start
+                        > _max) {
+                    _tooLong = true;
+                    break;
+                }
+                String chunk = new String(_buf, start, _pos - start,
+                        StandardCharsets.ISO_8859_1);
+                if (_pos < _limit) {
+                    _pos += 1;
+                    return line == null ? chunk
+                            : line.append(chunk).toString();
+                }
+                if (line == null) {
+                    line = new StringBuilder();
+                }
+                line.append(chunk);
+            }
+            return null;
+        }
+
+        /** Reads past the next COUNT lines. */
+        void skip(int count) throws IOException {
+            for (int i = 0; i < count; i += 1) {
+                next();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            _in.close();
+        }
+    }
+
+    /** The lines of a file after a common prefix: the first and last
+     *  limit of them, and how many there are, unless those would hold too
+     *  many bytes. */
+    private static class Window {
+        /** the first lines. */
+        private List<String> _head = new ArrayList<String>();
+
+        /** the last lines, in a ring ending before _count. */
+        private String[] _tail;
+
+        /** the number of lines. */
+        private int _count;
+
+        /** the bytes in _head and _tail, a line in both counted twice. */
+        private long _bytes;
+
+        /** true if reading stopped as _bytes passed its limit. */
+        private boolean _full;
+
+        /** Reads FIRST and then the rest of IN, keeping LIMIT lines at
+         *  each end, unless they would hold more than MAX bytes. */
+        Window(LineReader in, String first, int limit, long max)
+                throws IOException {
+            _tail = new String[limit];
+            for (String line = first; line != null && !_full;
+                 line = in.next()) {
+                if (_head.size() < limit) {
+                    _head.add(line);
+                    _bytes += line.length();
+                }
+                String old = _tail[_count % limit];
+                if (old != null) {
+                    _bytes -= old.length();
+                }
+                _tail[_count % limit] = line;
+                _bytes += line.length();
+                _count += 1;
+                _full = _bytes > max;
+            }
+        }
+
+        int tailSize() {
+            return Math.min(_count, _tail.length);
+        }
+
+        /** Returns the K-th line from the end, K < tailSize(). */
+        String fromEnd(int k) {
+            return _tail[(_count - 1 - k) % _tail.length];
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package gitlet;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/** Tests of file diffs: whole in memory, streamed through a window of
+ *  lines, and of binary files. */
+public class FileDiffTest {
+
+    @Rule
+    public TemporaryFolder _tmp = new TemporaryFolder();
+
+    /** Returns a new file holding LINES, each ended by a newline unless
+     *  it is the last and NEWLINE is false. */
+    private FileDiff.Source file(List<String> lines, boolean newline)
+            throws IOException {
+        String text = String.join("\n", lines);
+        if (newline && !lines.isEmpty()) {
+            text += "\n";
+        }
+        File file = _tmp.newFile();
+        Utils.writeContents(file, text.getBytes(StandardCharsets.ISO_8859_1));
+        return FileDiff.Source.file(file);
+    }
+
+    /** Returns what FileDiff.print prints for A and B. */
+    private static String print(FileDiff.Source a, FileDiff.Source b) {
+        PrintStream stdout = System.out;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(bytes));
+        try {
+            FileDiff.print(a, b);
+        } finally {
+            System.setOut(stdout);
+        }
+        return bytes.toString(StandardCharsets.ISO_8859_1);
+    }
+
+    /** Returns the diff of A and B streamed through LIMIT lines. */
+    private static String stream(FileDiff.Source a, FileDiff.Source b,
+                                 int limit) throws IOException {
+        return stream(a, b, limit, Long.MAX_VALUE, Long.MAX_VALUE);
+    }
+
+    /** Returns the diff of A and B streamed through LIMIT lines of at
+     *  most LINEBYTES bytes, holding at most WINDOWBYTES bytes. */
+    private static String stream(FileDiff.Source a, FileDiff.Source b,
+                                 int limit, long lineBytes,
+                                 long windowBytes) throws IOException {
+        StringWriter out = new StringWriter();
+        FileDiff.stream(a, b, limit, lineBytes, windowBytes, out);
+        return out.toString();
+    }
+
+    /** Returns LINES changed by the hunks in DIFF. */
+    private static List<String> patch(String diff, List<String> lines) {
+        List<String> result = new ArrayList<String>();
+        int pos = 0;
+        for (String line: LineDiff.lines(
+                diff.getBytes(StandardCharsets.ISO_8859_1))) {
+            if (line.startsWith("@@ -")) {
+                String[] range = line.split(" ")[1].substring(1).split(",");
+                int start = Integer.parseInt(range[0]);
+                if (range.length == 1 || !range[1].equals("0")) {
+                    start -= 1;
+                }
+                assertTrue(start >= pos);
+                result.addAll(lines.subList(pos, start));
+                pos = start;
+            } else if (line.startsWith("-")) {
+                assertEquals(lines.get(pos), line.substring(1));
+                pos += 1;
+            } else {
+                assertTrue(line.startsWith("+"));
+                result.add(line.substring(1));
+            }
+        }
+        result.addAll(lines.subList(pos, lines.size()));
+        return result;
+    }
+
+    private static List<String> randomLines(Random random, int count,
+                                            int alphabet) {
+        List<String> result = new ArrayList<String>();
+        for (int i = 0; i < count; i += 1) {
+            result.add("line " + random.nextInt(alphabet));
+        }
+        return result;
+    }
+
+    private static List<String> concat(List<String> first,
+                                       List<String> second,
+                                       List<String> third) {
+        List<String> result = new ArrayList<String>(first);
+        result.addAll(second);
+        result.addAll(third);
+        return result;
+    }
+
+    @Test
+    public void streamingMatchesTheWholeDiff() throws IOException {
+        Random random = new Random(25);
+        int[] limits = {1, 2, 5, 50, 100000};
+        for (int trial = 0; trial < 300; trial += 1) {
+            List<String> prefix = randomLines(random, random.nextInt(200), 5);
+            List<String> suffix = randomLines(random, random.nextInt(200), 5);
+            List<String> a = concat(prefix,
+                    randomLines(random, random.nextInt(30), 5), suffix);
+            List<String> b = concat(prefix,
+                    randomLines(random, random.nextInt(30), 5), suffix);
+            FileDiff.Source sourceA = file(a, true);
+            FileDiff.Source sourceB = file(b, true);
+            int limit = limits[random.nextInt(limits.length)];
+            String streamed = stream(sourceA, sourceB, limit);
+            assertEquals(b, patch(streamed, a));
+            if (limit > a.size() + b.size()) {
+                assertEquals(print(sourceA, sourceB), streamed);
+            }
+        }
+    }
+
+    @Test
+    public void longCommonSuffixIsFoundByReadingAgain() throws IOException {
+        Random random = new Random(25);
+        List<String> prefix = randomLines(random, 100, 1000);
+        List<String> suffix = randomLines(random, 500, 1000);
+        List<String> a = concat(prefix, List.of("old"), suffix);
+        List<String> b = concat(prefix, List.of("new", "lines"), suffix);
+        FileDiff.Source sourceA = file(a, false);
+        FileDiff.Source sourceB = file(b, false);
+        assertEquals("@@ -101 +101,2 @@\n-old\n+new\n+lines\n",
+                stream(sourceA, sourceB, 10));
+        assertEquals(print(sourceA, sourceB), stream(sourceA, sourceB, 10));
+    }
+
+    @Test
+    public void changeWiderThanTheWindowIsOneHunk() throws IOException {
+        List<String> prefix = List.of("p1", "p2", "p3");
+        List<String> suffix = List.of("s1", "s2");
+        List<String> middleA = new ArrayList<String>();
+        List<String> middleB = new ArrayList<String>();
+        StringBuilder expected = new StringBuilder("@@ -4,30 +4,20 @@\n");
+        for (int i = 0; i < 30; i += 1) {
+            middleA.add("a" + i);
+            expected.append("-a").append(i).append('\n');
+        }
+        for (int i = 0; i < 20; i += 1) {
+            middleB.add("b" + i);
+        }
+        for (int i = 0; i < 20; i += 1) {
+            expected.append("+b").append(i).append('\n');
+        }
+        List<String> a = concat(prefix, middleA, suffix);
+        List<String> b = concat(prefix, middleB, suffix);
+        String streamed = stream(file(a, true), file(b, true), 8);
+        assertEquals(expected.toString(), streamed);
+        assertEquals(b, patch(streamed, a));
+    }
+
+    @Test
+    public void tooLongLinesMeanBinary() throws IOException {
+        String line = "x".repeat(100);
+        FileDiff.Source a = file(List.of("same", "a"), true);
+        FileDiff.Source b = file(List.of("same", line), true);
+        FileDiff.Source c = file(List.of(line, "a"), true);
+        FileDiff.Source d = file(List.of(line, "b"), true);
+        assertEquals("@@ -2 +2 @@\n-a\n+" + line + "\n",
+                stream(a, b, 10, 100, Long.MAX_VALUE));
+        assertEquals("Binary files differ\n",
+                stream(a, b, 10, 99, Long.MAX_VALUE));
+        assertEquals("@@ -2 +2 @@\n-a\n+b\n",
+                stream(c, d, 10, 100, Long.MAX_VALUE));
+        assertEquals("Binary files differ\n",
+                stream(c, d, 10, 99, Long.MAX_VALUE));
+    }
+
+    @Test
+    public void fullWindowsMeanBinary() throws IOException {
+        List<String> common = List.of("common");
+        List<String> tenA = new ArrayList<String>();
+        List<String> tenB = new ArrayList<String>();
+        for (int i = 0; i < 10; i += 1) {
+            tenA.add("a" + "-".repeat(8));
+            tenB.add("b" + "-".repeat(8));
+        }
+        FileDiff.Source a = file(concat(common, tenA, common), true);
+        FileDiff.Source b = file(concat(common, tenB, common), true);
+        String whole = stream(a, b, 4, Long.MAX_VALUE, Long.MAX_VALUE);
+        assertEquals(print(a, b), whole);
+        // Four lines of 9 bytes at each end.
+        int most = 8 * 9;
+        assertEquals(whole, stream(a, b, 4, Long.MAX_VALUE, most));
+        assertEquals("Binary files differ\n",
+                stream(a, b, 4, Long.MAX_VALUE, most - 1));
+    }
+
+    @Test
+    public void missingAndEmptyFiles() throws IOException {
+        FileDiff.Source missing = FileDiff.Source.file(
+                new File(_tmp.getRoot(), "missing"));
+        FileDiff.Source empty = file(List.of(), true);
+        FileDiff.Source some = file(List.of("a", "b"), false);
+        assertEquals("@@ -0,0 +1,2 @@\n+a\n+b\n", print(missing, some));
+        assertEquals("@@ -1,2 +0,0 @@\n-a\n-b\n", print(some, empty));
+        assertEquals("@@ -0,0 +1,2 @@\n+a\n+b\n", stream(missing, some, 1));
+        assertEquals("", stream(missing, empty, 1));
+        assertEquals("", print(some, some));
+    }
+
+    @Test
+    public void nulInTheFirstBytesMeansBinary() throws IOException {
+        byte[] content = new byte[20000];
+        Arrays.fill(content, (byte) 'x');
+        content[10000] = '\n';
+        File text = _tmp.newFile();
+        Utils.writeContents(text, content);
+        content[12000] = 0;
+        File lateNul = _tmp.newFile();
+        Utils.writeContents(lateNul, content);
+        content[7999] = 0;
+        File binary = _tmp.newFile();
+        Utils.writeContents(binary, content);
+        assertEquals("Binary files differ\n",
+                print(FileDiff.Source.file(text),
+                        FileDiff.Source.file(binary)));
+        String diff = print(FileDiff.Source.file(text),
+                FileDiff.Source.file(lateNul));
+        assertTrue(diff.startsWith("@@ -2 +2 @@\n-x"));
+    }
+}
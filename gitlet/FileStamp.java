@@ -0,0 +1,30 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.TimeUnit;
+
+/** What a file looked like on disk: its modification time, size and
+ *  identity (device and inode, where the file system has them). A file
+ *  that is rewritten, or replaced by an atomic move, gets a new stamp,
+ *  so a long-lived process can tell when to reload what it read from
+ *  it. */
+public class FileStamp {
+
+    /** stamp of a file that does not exist. */
+    static final String NONE = "none";
+
+    /** Returns the stamp of FILE, or NONE if it does not exist. */
+    static String of(File file) {
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(file.toPath(),
+                    BasicFileAttributes.class);
+            return attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS)
+                    + " " + attrs.size() + " " + attrs.fileKey();
+        } catch (IOException excp) {
+            return NONE;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package gitlet;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Iterator;
+
+/** The options of log and global-log, and the printing of the commits
+ *  they select. Commits are given as a lazy iterator of entries and
+ *  looked at one at a time as they are printed, so output starts at once
+ *  and memory does not grow with the length of history; commits outside
+ *  the --since and --until window are skipped by their time alone.
+ *  Everything is written through one buffered writer. */
+public class History {
+
+    /** date formats accepted by --since and --until. */
+    private static final String[] DATE_PATTERNS = {
+        "yyyy-MM-dd HH:mm:ss", "yyyy-MM-dd"
+    };
+
+    /** digits of an id shown by --oneline. */
+    private static final int SHORT_ID = 7;
+
+    /** most commits to print, or -1 for all. */
+    private int _limit = -1;
+
+    /** earliest and latest commit times to print, in seconds. */
+    private long _since = Long.MIN_VALUE, _until = Long.MAX_VALUE;
+
+    /** true if each commit is printed on one line. */
+    private boolean _oneline;
+
+    /** Options from OPTIONS: "-n COUNT", "--since DATE", "--until DATE"
+     *  (each also as "--opt=VALUE") and "--oneline". */
+    public History(String... options) {
+        for (int i = 0; i < options.length; i += 1) {
+            String option = options[i];
+            String value = null;
+            int eq = option.indexOf('=');
+            if (option.startsWith("--") && eq > 0) {
+                value = option.substring(eq + 1);
+                option = option.substring(0, eq);
+            } else if (!option.equals("--oneline")
+                    && i + 1 < options.length) {
+                i += 1;
+                value = options[i];
+            }
+            if (option.equals("--oneline") && value == null) {
+                _oneline = true;
+            } else if (value == null) {
+                incorrect();
+            } else if (option.equals("-n")) {
+                _limit = count(value);
+            } else if (option.equals("--since")) {
+                _since = date(value);
+            } else if (option.equals("--until")) {
+                _until = date(value);
+            } else {
+                incorrect();
+            }
+        }
+    }
+
+    /** Prints the selected commits among ENTRIES, in order. */
+    public void print(Iterator<? extends Entry> entries) throws IOException {
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out));
+        int printed = 0;
+        while (entries.hasNext() && printed != _limit) {
+            Entry entry = entries.next();
+            if (_since != Long.MIN_VALUE || _until != Long.MAX_VALUE) {
+                long time = entry.time();
+                if (time < _since || time > _until) {
+                    continue;
+                }
+            }
+            if (_oneline) {
+                out.write(entry.id().substring(0, SHORT_ID));
+                out.write(' ');
+                out.write(entry.message());
+                out.write('\n');
+            } else {
+                out.write("===\ncommit ");
+                out.write(entry.id());
+                out.write("\nDate: ");
+                out.write(entry.date());
+                out.write('\n');
+                out.write(entry.message());
+                out.write("\n\n");
+            }
+            printed += 1;
+        }
+        out.flush();
+    }
+
+    /** Returns the entry of commit SHA1, which takes its time from the
+     *  commit graph and reads the commit only for its date and message. */
+    static Entry of(String sha1) {
+        return new Entry() {
+            private Commit _commit;
+
+            @Override
+            public String id() {
+                return sha1;
+            }
+
+            @Override
+            public long time() {
+                return Repo.commitTime(sha1);
+            }
+
+            @Override
+            public String date() {
+                return commit().getTime();
+            }
+
+            @Override
+            public String message() {
+                return commit().getMessage();
+            }
+
+            private Commit commit() {
+                if (_commit == null) {
+                    _commit = Repo.readCommit(sha1);
+                }
+                return _commit;
+            }
+        };
+    }
+
+    private static int count(String value) {
+        int count;
+        try {
+            count = Integer.parseInt(value);
+        } catch (NumberFormatException excp) {
+            count = -1;
+        }
+        if (count < 0) {
+            incorrect();
+        }
+        return count;
+    }
+
+    /** Returns VALUE, a date in the local time zone, in seconds since
+     *  the epoch. */
+    private static long date(String value) {
+        for (String pattern: DATE_PATTERNS) {
+            SimpleDateFormat format = new SimpleDateFormat(pattern);
+            format.setLenient(false);
+            try {
+                return format.parse(value).getTime() / 1000;
+            } catch (ParseException excp) {
+                continue;
+            }
+        }
+        incorrect();
+        return 0;
+    }
+
+    private static void incorrect() {
+        System.out.println("Incorrect operands.");
+        Main.exit(0);
+    }
+
+    /** What is printed of one commit. */
+    interface Entry {
+        String id();
+
+        /** Returns the commit time in seconds since the epoch. */
+        long time();
+
+        /** Returns the date line of the commit. */
+        String date();
+
+        String message();
+    }
+}
@@ -0,0 +1,249 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/** The stat cache in .gitlet/index: for each path hashed so far, the
+ *  modification time, size and inode the file had when it was hashed
+ *  and the resulting blob id. A file is only read and hashed again
+ *  when one of those changes. As in git, a file modified in the same
+ *  instant the index was written could change again without its stat
+ *  data changing, so entries not older than the index are rehashed.
+ *  The file holds the byte 'I', a version byte, a varint count and then
+ *  per path, in order: the path (a varint length and UTF-8 bytes), the
+ *  mtime in nanoseconds, size and inode as longs and the raw 20-byte
+ *  blob id. Lookups may be made from several threads at once. */
+public class Index {
+
+    /** first byte of the index. */
+    private static final int MAGIC = 'I';
+
+    /** version of the layout. */
+    private static final int VERSION = 1;
+
+    /** bytes of an entry after its path. */
+    private static final int ENTRY = 8 + 8 + 8 + ObjectStore.UID_LENGTH / 2;
+
+    /** the index file. */
+    private File _file;
+
+    /** entries by path, or null before the first lookup. */
+    private TreeMap<String, Entry> _entries;
+
+    /** modification time of _file when it was read, in nanoseconds. */
+    private long _written;
+
+    /** stamp of _file when _entries were read or last saved. */
+    private String _stamp;
+
+    /** true if _entries differ from the file. */
+    private boolean _dirty;
+
+    public Index(File file) {
+        _file = file;
+    }
+
+    /** Forgets the loaded entries if the file has changed on disk
+     *  since they were read or saved. */
+    public synchronized void refresh() {
+        if (_entries != null && !FileStamp.of(_file).equals(_stamp)) {
+            _entries = null;
+            _dirty = false;
+        }
+    }
+
+    /** Returns the blob id of FILE, found at PATH in the working tree,
+     *  hashing it only if its stat data differs from the cached entry.
+     *  Returns null if FILE does not exist. */
+    public String hash(String path, File file) {
+        Entry stat = stat(file);
+        if (stat == null) {
+            return null;
+        }
+        String cached = cached(path, stat);
+        if (cached != null) {
+            return cached;
+        }
+        stat._sha1 = Blob.hash(file);
+        record(path, stat);
+        return stat._sha1;
+    }
+
+    /** Returns the blob id cached for PATH if it was hashed with stat
+     *  data STAT, or null. */
+    private synchronized String cached(String path, Entry stat) {
+        Entry cached = entries().get(path);
+        if (cached != null && cached.sameStat(stat)
+                && cached._mtime < _written) {
+            return cached._sha1;
+        }
+        return null;
+    }
+
+    private synchronized void record(String path, Entry stat) {
+        entries().put(path, stat);
+        _dirty = true;
+    }
+
+    /** Returns the blob id last recorded for PATH, without looking at
+     *  the file, or null. */
+    public synchronized String get(String path) {
+        Entry entry = entries().get(path);
+        return entry == null ? null : entry._sha1;
+    }
+
+    /** Records that FILE at PATH was just written with blob SHA1, so it
+     *  need not be hashed again once it is no longer racily clean. */
+    public void update(String path, File file, String sha1) {
+        Entry stat = stat(file);
+        if (stat != null) {
+            stat._sha1 = sha1;
+            record(path, stat);
+        }
+    }
+
+    public synchronized void remove(String path) {
+        if (entries().remove(path) != null) {
+            _dirty = true;
+        }
+    }
+
+    /** Drops the entries of paths not in PATHS, the files now in the
+     *  working tree. */
+    public synchronized void retain(Set<String> paths) {
+        if (entries().keySet().retainAll(paths)) {
+            _dirty = true;
+        }
+    }
+
+    /** Writes the index if it has changed. */
+    public synchronized void save() {
+        if (!_dirty || !_file.getParentFile().isDirectory()) {
+            return;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(MAGIC);
+        out.write(VERSION);
+        ObjectStore.writeVarint(out, _entries.size());
+        ByteBuffer entry = ByteBuffer.allocate(ENTRY);
+        for (Map.Entry<String, Entry> e: _entries.entrySet()) {
+            ObjectStore.writeString(out, e.getKey());
+            entry.clear();
+            entry.putLong(e.getValue()._mtime).putLong(e.getValue()._size)
+                    .putLong(e.getValue()._inode)
+                    .put(ObjectStore.rawId(e.getValue()._sha1));
+            out.write(entry.array(), 0, ENTRY);
+        }
+        Utils.writeContents(_file, out.toByteArray());
+        _written = mtime(_file);
+        _stamp = FileStamp.of(_file);
+        _dirty = false;
+    }
+
+    private TreeMap<String, Entry> entries() {
+        if (_entries != null) {
+            return _entries;
+        }
+        _entries = new TreeMap<String, Entry>();
+        _stamp = FileStamp.of(_file);
+        if (!_file.isFile()) {
+            return _entries;
+        }
+        _written = mtime(_file);
+        byte[] bytes = Utils.readContents(_file);
+        if (bytes.length < 2 || bytes[0] != MAGIC || bytes[1] != VERSION) {
+            _dirty = true;
+            return _entries;
+        }
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        int[] pos = {2};
+        long count = ObjectStore.readVarint(bytes, pos);
+        for (long i = 0; i < count; i += 1) {
+            String path = ObjectStore.readString(bytes, pos);
+            Entry e = new Entry(buf.getLong(pos[0]), buf.getLong(pos[0] + 8),
+                    buf.getLong(pos[0] + 16));
+            e._sha1 = ObjectStore.hexId(buf, pos[0] + 24);
+            pos[0] += ENTRY;
+            _entries.put(path, e);
+        }
+        return _entries;
+    }
+
+    private static long mtime(File file) {
+        try {
+            return Files.getLastModifiedTime(file.toPath())
+                    .to(TimeUnit.NANOSECONDS);
+        } catch (IOException excp) {
+            return 0;
+        }
+    }
+
+    /** Returns the stat data of FILE, or null if it is not a regular
+     *  file. The inode is 0 where the file system does not expose one. */
+    private static Entry stat(File file) {
+        Path path = file.toPath();
+        try {
+            Map<String, Object> attrs = Files.readAttributes(path,
+                    "unix:ino,size,lastModifiedTime,isRegularFile",
+                    LinkOption.NOFOLLOW_LINKS);
+            if (!Boolean.TRUE.equals(attrs.get("isRegularFile"))) {
+                return null;
+            }
+            return new Entry(
+                    ((FileTime) attrs.get("lastModifiedTime"))
+                            .to(TimeUnit.NANOSECONDS),
+                    (Long) attrs.get("size"), (Long) attrs.get("ino"));
+        } catch (UnsupportedOperationException excp) {
+            try {
+                BasicFileAttributes attrs = Files.readAttributes(path,
+                        BasicFileAttributes.class);
+                if (!attrs.isRegularFile()) {
+                    return null;
+                }
+                return new Entry(attrs.lastModifiedTime()
+                        .to(TimeUnit.NANOSECONDS), attrs.size(), 0);
+            } catch (IOException e) {
+                return null;
+            }
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+
+    /** The stat data and blob id of one path. */
+    private static class Entry {
+        /** modification time in nanoseconds. */
+        private long _mtime;
+
+        /** size in bytes. */
+        private long _size;
+
+        /** inode number, or 0 if unknown. */
+        private long _inode;
+
+        /** blob id of the content. */
+        private String _sha1;
+
+        Entry(long mtime, long size, long inode) {
+            _mtime = mtime;
+            _size = size;
+            _inode = inode;
+        }
+
+        boolean sameStat(Entry other) {
+            return _mtime == other._mtime && _size == other._size
+                    && _inode == other._inode;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package gitlet;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.util.Set;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/** Tests of the stat cache, written and read again, and of files that
+ *  are racily clean. */
+public class IndexTest {
+
+    @Rule
+    public TemporaryFolder _tmp = new TemporaryFolder();
+
+    /** the index file, and a working file. */
+    private File _file, _work;
+
+    /** a modification time long before the index is written. */
+    private long _past;
+
+    @Before
+    public void setUp() throws IOException {
+        _file = new File(_tmp.newFolder(), "index");
+        _work = _tmp.newFile("work");
+        _past = System.currentTimeMillis() - 60000;
+    }
+
+    /** Writes TEXT to the working file, with modification time TIME in
+     *  milliseconds. */
+    private void write(String text, long time) throws IOException {
+        Utils.writeContents(_work, text);
+        setTime(_work, time);
+    }
+
+    private static void setTime(File file, long time) throws IOException {
+        Files.setLastModifiedTime(file.toPath(), FileTime.fromMillis(time));
+    }
+
+    @Test
+    public void entriesSurviveSaving() throws IOException {
+        File other = _tmp.newFile("other");
+        Utils.writeContents(other, "other");
+        Index index = new Index(_file);
+        write("one", _past);
+        String sha1 = index.hash("work", _work);
+        assertEquals(Blob.hash(_work), sha1);
+        index.hash("dir/\u00e9t\u00e9", other);
+        index.save();
+        Index reopened = new Index(_file);
+        assertEquals(sha1, reopened.get("work"));
+        assertEquals(Blob.hash(other), reopened.get("dir/\u00e9t\u00e9"));
+        assertNull(reopened.get("missing"));
+        reopened.retain(Set.of("work"));
+        reopened.save();
+        assertNull(new Index(_file).get("dir/\u00e9t\u00e9"));
+        assertNull(index.hash("missing", new File(_tmp.getRoot(), "no")));
+    }
+
+    @Test
+    public void filesOlderThanTheIndexAreNotRead() throws IOException {
+        write("aaaa", _past);
+        Index index = new Index(_file);
+        String sha1 = index.hash("work", _work);
+        index.save();
+        write("bbbb", _past);
+        assertEquals(sha1, new Index(_file).hash("work", _work));
+        write("bbbb", _past + 1000);
+        assertEquals(Blob.hash(_work), new Index(_file).hash("work", _work));
+    }
+
+    @Test
+    public void filesNotOlderThanTheIndexAreHashedAgain() throws IOException {
+        write("aaaa", _past);
+        Index index = new Index(_file);
+        index.hash("work", _work);
+        index.save();
+        setTime(_file, _past);
+        write("bbbb", _past);
+        Index reopened = new Index(_file);
+        assertEquals(Blob.hash(_work), reopened.hash("work", _work));
+        reopened.save();
+        setTime(_file, _past - 1000);
+        write("cccc", _past);
+        assertEquals(Blob.hash(_work), new Index(_file).hash("work", _work));
+    }
+
+    @Test
+    public void refreshRereadsAnIndexSavedElsewhere() throws IOException {
+        write("aaaa", _past);
+        Index index = new Index(_file);
+        assertNull(index.get("work"));
+        Index other = new Index(_file);
+        String sha1 = other.hash("work", _work);
+        other.save();
+        assertNull(index.get("work"));
+        index.refresh();
+        assertEquals(sha1, index.get("work"));
+        other.remove("work");
+        other.save();
+        index.refresh();
+        assertNull(index.get("work"));
+    }
+
+    @Test
+    public void unreadableIndexesStartEmpty() throws IOException {
+        Utils.writeContents(_file, "not an index");
+        Index index = new Index(_file);
+        assertNull(index.get("work"));
+        write("aaaa", _past);
+        String sha1 = index.hash("work", _work);
+        index.save();
+        assertEquals(sha1, new Index(_file).get("work"));
+    }
+}
@@ -0,0 +1,289 @@
+package gitlet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/** Differences between two sequences of lines, computed in memory. The
+ *  result has the same form as Diff.diffs(): an array of quadruples
+ *  (L1, N1, L2, N2), one per hunk in order, each saying that the N1 lines
+ *  of the first sequence starting at L1 are replaced by the N2 lines of
+ *  the second starting at L2.
+ *
+ *  Lines are first interned to small integers, so the algorithms only
+ *  ever compare ints. Two algorithms are offered, chosen by the setting
+ *  diff.algorithm: "myers" (the default), Myers' O(ND) algorithm in its
+ *  linear-space form, which bisects the edit graph at the middle snake
+ *  and recurses on both halves; and "histogram", which, as in git,
+ *  anchors each region on the common run whose rarest line is rarest
+ *  (the longest such run on ties) and recurses around it, falling back to
+ *  Myers where every shared line is too common. Both trim common prefixes
+ *  and suffixes first. */
+public class LineDiff {
+
+    /** most occurrences of a line in a region for the histogram
+     *  algorithm to anchor on it. */
+    private static final int MAX_CHAIN = 64;
+
+    /** the interned lines of the two sequences. */
+    private int[] _a, _b;
+
+    /** which lines of each sequence are not matched in the other. */
+    private boolean[] _changedA, _changedB;
+
+    private LineDiff(List<String> a, List<String> b) {
+        HashMap<String, Integer> ids = new HashMap<String, Integer>();
+        _a = intern(a, ids);
+        _b = intern(b, ids);
+        _changedA = new boolean[_a.length];
+        _changedB = new boolean[_b.length];
+    }
+
+    /** Returns the hunks turning A into B, using the algorithm named by
+     *  diff.algorithm. */
+    public static int[] diff(List<String> a, List<String> b) {
+        return diff(a, b, Config.get("diff.algorithm", "myers"));
+    }
+
+    /** Returns the hunks turning A into B, using ALGORITHM, "myers" or
+     *  "histogram". */
+    public static int[] diff(List<String> a, List<String> b,
+                             String algorithm) {
+        LineDiff diff = new LineDiff(a, b);
+        if (algorithm.equals("histogram")) {
+            diff.histogram(0, diff._a.length, 0, diff._b.length);
+        } else {
+            diff.myers(0, diff._a.length, 0, diff._b.length);
+        }
+        return diff.hunks();
+    }
+
+    /** Returns the lines of CONTENT, without their newlines, one char
+     *  per byte. */
+    static List<String> lines(byte[] content) {
+        String text = new String(content, StandardCharsets.ISO_8859_1);
+        List<String> result = new ArrayList<String>();
+        int start = 0;
+        while (start < text.length()) {
+            int end = text.indexOf('\n', start);
+            if (end < 0) {
+                end = text.length();
+            }
+            result.add(text.substring(start, end));
+            start = end + 1;
+        }
+        return result;
+    }
+
+    private static int[] intern(List<String> lines,
+                                HashMap<String, Integer> ids) {
+        int[] result = new int[lines.size()];
+        int i = 0;
+        for (String line: lines) {
+            Integer id = ids.get(line);
+            if (id == null) {
+                id = ids.size();
+                ids.put(line, id);
+            }
+            result[i] = id;
+            i += 1;
+        }
+        return result;
+    }
+
+    /** Returns the hunks marked in _changedA and _changedB. */
+    private int[] hunks() {
+        ArrayList<Integer> result = new ArrayList<Integer>();
+        int i = 0;
+        int j = 0;
+        while (i < _a.length || j < _b.length) {
+            if (i < _a.length && j < _b.length
+                    && !_changedA[i] && !_changedB[j]) {
+                i += 1;
+                j += 1;
+                continue;
+            }
+            int i0 = i;
+            int j0 = j;
+            while (i < _a.length && _changedA[i]) {
+                i += 1;
+            }
+            while (j < _b.length && _changedB[j]) {
+                j += 1;
+            }
+            result.add(i0);
+            result.add(i - i0);
+            result.add(j0);
+            result.add(j - j0);
+        }
+        int[] hunks = new int[result.size()];
+        for (int k = 0; k < hunks.length; k += 1) {
+            hunks[k] = result.get(k);
+        }
+        return hunks;
+    }
+
+    /** Marks the differences between _a[ALO..AHI) and _b[BLO..BHI) with
+     *  Myers' linear-space algorithm. */
+    private void myers(int aLo, int aHi, int bLo, int bHi) {
+        while (true) {
+            while (aLo < aHi && bLo < bHi && _a[aLo] == _b[bLo]) {
+                aLo += 1;
+                bLo += 1;
+            }
+            while (aLo < aHi && bLo < bHi && _a[aHi - 1] == _b[bHi - 1]) {
+                aHi -= 1;
+                bHi -= 1;
+            }
+            if (aLo == aHi || bLo == bHi) {
+                mark(aLo, aHi, bLo, bHi);
+                return;
+            }
+            int[] snake = middleSnake(aLo, aHi, bLo, bHi);
+            myers(aLo, snake[0], bLo, snake[1]);
+            aLo = snake[2];
+            bLo = snake[3];
+        }
+    }
+
+    /** Returns {x0, y0, x1, y1}: a snake from (x0, y0) to (x1, y1) in the
+     *  middle of a shortest edit path from (ALO, BLO) to (AHI, BHI). The
+     *  regions start and end with differing lines. */
+    private int[] middleSnake(int aLo, int aHi, int bLo, int bHi) {
+        int n = aHi - aLo;
+        int m = bHi - bLo;
+        int delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        int max = (n + m + 1) / 2;
+        int off = max + 1;
+        int[] vf = new int[2 * max + 3];
+        int[] vb = new int[2 * max + 3];
+        for (int d = 0; d <= max; d += 1) {
+            for (int k = -d; k <= d; k += 2) {
+                int x;
+                if (k == -d || k != d && vf[off + k - 1] < vf[off + k + 1]) {
+                    x = vf[off + k + 1];
+                } else {
+                    x = vf[off + k - 1] + 1;
+                }
+                int y = x - k;
+                int x0 = x;
+                int y0 = y;
+                while (x < n && y < m && _a[aLo + x] == _b[bLo + y]) {
+                    x += 1;
+                    y += 1;
+                }
+                vf[off + k] = x;
+                int kr = delta - k;
+                if (odd && kr >= -(d - 1) && kr <= d - 1
+                        && x + vb[off + kr] >= n) {
+                    return new int[] {aLo + x0, bLo + y0, aLo + x, bLo + y};
+                }
+            }
+            for (int kr = -d; kr <= d; kr += 2) {
+                int xr;
+                if (kr == -d
+                        || kr != d && vb[off + kr - 1] < vb[off + kr + 1]) {
+                    xr = vb[off + kr + 1];
+                } else {
+                    xr = vb[off + kr - 1] + 1;
+                }
+                int yr = xr - kr;
+                int xr0 = xr;
+                int yr0 = yr;
+                while (xr < n && yr < m
+                        && _a[aHi - 1 - xr] == _b[bHi - 1 - yr]) {
+                    xr += 1;
+                    yr += 1;
+                }
+                vb[off + kr] = xr;
+                int k = delta - kr;
+                if (!odd && k >= -d && k <= d && xr + vf[off + k] >= n) {
+                    return new int[] {aHi - xr, bHi - yr, aHi - xr0,
+                                      bHi - yr0};
+                }
+            }
+        }
+        throw new IllegalStateException("no middle snake");
+    }
+
+    /** Marks the differences between _a[ALO..AHI) and _b[BLO..BHI) with
+     *  the histogram algorithm. */
+    private void histogram(int aLo, int aHi, int bLo, int bHi) {
+        while (true) {
+            while (aLo < aHi && bLo < bHi && _a[aLo] == _b[bLo]) {
+                aLo += 1;
+                bLo += 1;
+            }
+            while (aLo < aHi && bLo < bHi && _a[aHi - 1] == _b[bHi - 1]) {
+                aHi -= 1;
+                bHi -= 1;
+            }
+            if (aLo == aHi || bLo == bHi) {
+                mark(aLo, aHi, bLo, bHi);
+                return;
+            }
+            HashMap<Integer, List<Integer>> where =
+                    new HashMap<Integer, List<Integer>>();
+            for (int i = aLo; i < aHi; i += 1) {
+                where.computeIfAbsent(_a[i], line -> new ArrayList<Integer>())
+                        .add(i);
+            }
+            int bestCount = MAX_CHAIN + 1;
+            int bestLength = 0;
+            int bestA = -1;
+            int bestB = -1;
+            for (int j = bLo; j < bHi;) {
+                List<Integer> occurrences = where.get(_b[j]);
+                int next = j + 1;
+                if (occurrences == null || occurrences.size() > bestCount) {
+                    j = next;
+                    continue;
+                }
+                for (int i: occurrences) {
+                    int as = i;
+                    int bs = j;
+                    while (as > aLo && bs > bLo && _a[as - 1] == _b[bs - 1]) {
+                        as -= 1;
+                        bs -= 1;
+                    }
+                    int ae = as;
+                    int be = bs;
+                    int count = MAX_CHAIN + 1;
+                    while (ae < aHi && be < bHi && _a[ae] == _b[be]) {
+                        count = Math.min(count, where.get(_a[ae]).size());
+                        ae += 1;
+                        be += 1;
+                    }
+                    if (count < bestCount
+                            || count == bestCount && ae - as > bestLength) {
+                        bestCount = count;
+                        bestLength = ae - as;
+                        bestA = as;
+                        bestB = bs;
+                    }
+                    next = Math.max(next, be);
+                }
+                j = next;
+            }
+            if (bestA < 0) {
+                myers(aLo, aHi, bLo, bHi);
+                return;
+            }
+            histogram(aLo, bestA, bLo, bestB);
+            aLo = bestA + bestLength;
+            bLo = bestB + bestLength;
+        }
+    }
+
+    /** Marks _a[ALO..AHI) and _b[BLO..BHI) as changed. */
+    private void mark(int aLo, int aHi, int bLo, int bHi) {
+        for (int i = aLo; i < aHi; i += 1) {
+            _changedA[i] = true;
+        }
+        for (int j = bLo; j < bHi; j += 1) {
+            _changedB[j] = true;
+        }
+    }
+}
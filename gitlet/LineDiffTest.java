@@ -0,0 +1,155 @@
+package gitlet;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+/** Tests of the Myers and histogram line diffs. */
+public class LineDiffTest {
+
+    /** Returns the lines in TEXT, separated by spaces. */
+    private static List<String> lines(String text) {
+        if (text.isEmpty()) {
+            return new ArrayList<String>();
+        }
+        return Arrays.asList(text.split(" "));
+    }
+
+    private static List<String> randomLines(Random random, int count,
+                                            int alphabet) {
+        List<String> result = new ArrayList<String>();
+        for (int i = 0; i < count; i += 1) {
+            result.add(String.valueOf(random.nextInt(alphabet)));
+        }
+        return result;
+    }
+
+    /** Returns the length of the longest common subsequence of A and B. */
+    private static int lcs(List<String> a, List<String> b) {
+        int[][] length = new int[a.size() + 1][b.size() + 1];
+        for (int i = a.size() - 1; i >= 0; i -= 1) {
+            for (int j = b.size() - 1; j >= 0; j -= 1) {
+                length[i][j] = a.get(i).equals(b.get(j))
+                        ? length[i + 1][j + 1] + 1
+                        : Math.max(length[i + 1][j], length[i][j + 1]);
+            }
+        }
+        return length[0][0];
+    }
+
+    /** Asserts that HUNKS are in order, apart and not empty, and turn A
+     *  into B, and returns the number of lines they delete and insert. */
+    private static int check(int[] hunks, List<String> a, List<String> b) {
+        assertEquals(0, hunks.length % 4);
+        List<String> result = new ArrayList<String>();
+        int i = 0;
+        int j = 0;
+        int edits = 0;
+        for (int h = 0; h < hunks.length; h += 4) {
+            assertTrue(hunks[h + 1] + hunks[h + 3] > 0);
+            assertEquals(hunks[h] - i, hunks[h + 2] - j);
+            assertTrue(h == 0 || hunks[h] > i);
+            result.addAll(a.subList(i, hunks[h]));
+            result.addAll(b.subList(hunks[h + 2],
+                    hunks[h + 2] + hunks[h + 3]));
+            i = hunks[h] + hunks[h + 1];
+            j = hunks[h + 2] + hunks[h + 3];
+            edits += hunks[h + 1] + hunks[h + 3];
+        }
+        result.addAll(a.subList(i, a.size()));
+        assertEquals(b, result);
+        return edits;
+    }
+
+    @Test
+    public void simpleHunks() {
+        for (String algorithm: new String[] {"myers", "histogram"}) {
+            assertArrayEquals(new int[] {1, 1, 1, 1},
+                    LineDiff.diff(lines("a b c"), lines("a x c"), algorithm));
+            assertArrayEquals(new int[] {0, 0, 0, 2},
+                    LineDiff.diff(lines(""), lines("a b"), algorithm));
+            assertArrayEquals(new int[] {0, 2, 0, 0},
+                    LineDiff.diff(lines("a b"), lines(""), algorithm));
+            assertArrayEquals(new int[0],
+                    LineDiff.diff(lines("a b"), lines("a b"), algorithm));
+            assertArrayEquals(new int[] {1, 0, 1, 1, 2, 1, 3, 0},
+                    LineDiff.diff(lines("a b c"), lines("a x b"), algorithm));
+        }
+    }
+
+    @Test
+    public void myersIsMinimal() {
+        Random random = new Random(23);
+        for (int trial = 0; trial < 2000; trial += 1) {
+            int alphabet = random.nextInt(8) + 1;
+            List<String> a = randomLines(random, random.nextInt(40),
+                    alphabet);
+            List<String> b = randomLines(random, random.nextInt(40),
+                    alphabet);
+            int edits = check(LineDiff.diff(a, b, "myers"), a, b);
+            assertEquals(a.size() + b.size() - 2 * lcs(a, b), edits);
+        }
+    }
+
+    @Test
+    public void histogramIsValid() {
+        Random random = new Random(23);
+        for (int trial = 0; trial < 2000; trial += 1) {
+            int alphabet = random.nextInt(8) + 1;
+            List<String> a = randomLines(random, random.nextInt(40),
+                    alphabet);
+            List<String> b = randomLines(random, random.nextInt(40),
+                    alphabet);
+            int edits = check(LineDiff.diff(a, b, "histogram"), a, b);
+            assertTrue(edits >= a.size() + b.size() - 2 * lcs(a, b));
+        }
+    }
+
+    @Test
+    public void editsOfLongSequences() {
+        Random random = new Random(23);
+        List<String> a = randomLines(random, 5000, 1000);
+        List<String> b = new ArrayList<String>(a);
+        for (int e = 0; e < 50; e += 1) {
+            int at = random.nextInt(b.size());
+            if (random.nextBoolean()) {
+                b.remove(at);
+            } else {
+                b.add(at, "new " + e);
+            }
+        }
+        int myers = check(LineDiff.diff(a, b, "myers"), a, b);
+        assertTrue(myers <= 50);
+        assertTrue(check(LineDiff.diff(a, b, "histogram"), a, b) <= 100);
+    }
+
+    @Test
+    public void histogramFallsBackOnCommonLines() {
+        Random random = new Random(23);
+        List<String> a = randomLines(random, 1000, 2);
+        List<String> b = randomLines(random, 1000, 2);
+        check(LineDiff.diff(a, b, "histogram"), a, b);
+    }
+
+    @Test
+    public void histogramAnchorsOnUniqueLines() {
+        List<String> a = lines("} } f1 a } } f2 b }");
+        List<String> b = lines("} } f2 b }");
+        assertArrayEquals(new int[] {2, 4, 2, 0},
+                LineDiff.diff(a, b, "histogram"));
+    }
+
+    @Test
+    public void linesSplitOnNewlines() {
+        assertEquals(lines("a  b"), LineDiff.lines(
+                "a\n\nb\n".getBytes(StandardCharsets.ISO_8859_1)));
+        assertEquals(lines("a b"), LineDiff.lines(
+                "a\nb".getBytes(StandardCharsets.ISO_8859_1)));
+        assertEquals(lines(""), LineDiff.lines(new byte[0]));
+    }
+}
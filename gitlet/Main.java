@@ -1,6 +1,7 @@
 package gitlet;
 
 import java.io.IOException;
+import java.util.Arrays;
 
 /** Driver class for Gitlet, the tiny stupid version-control system.
  *  @author Wooju Lee (Bella)
@@ -12,15 +13,20 @@ public class Main {
     public static void main(String... args) throws IOException {
         if (args.length == 0) {
             System.out.println("Please enter a command.");
-            System.exit(0);
+            exit(0);
         } else {
             String comm = args[0];
+            if (!comm.equals("init")) {
+                repo.migrate();
+            }
             if (comm.equals("init")) {
                 validateNum(args.length, 1);
                 repo.init();
             } else if (comm.equals("add")) {
-                validateNum(args.length, 2);
-                repo.add(args[1]);
+                if (args.length < 2) {
+                    validateNum(args.length, 2);
+                }
+                repo.add(Arrays.copyOfRange(args, 1, args.length));
             } else if (comm.equals("commit")) {
                 validateNum(args.length, 2);
                 repo.commit(args[1]);
@@ -28,11 +34,9 @@ public class Main {
                 validateNum(args.length, 2);
                 repo.rm(args[1]);
             } else if (comm.equals("log")) {
-                validateNum(args.length, 1);
-                repo.log();
+                repo.log(Arrays.copyOfRange(args, 1, args.length));
             } else if (comm.equals("global-log")) {
-                validateNum(args.length, 1);
-                repo.globalLog();
+                repo.globalLog(Arrays.copyOfRange(args, 1, args.length));
             } else if (comm.equals("status")) {
                 validateNum(args.length, 1);
                 repo.status();
@@ -51,15 +55,36 @@ public class Main {
             } else if (comm.equals("find")) {
                 validateNum(args.length, 2);
                 repo.find(args[1]);
+            } else if (comm.equals("watch")) {
+                validateNum(args.length, 1);
+                repo.watch();
+            } else if (comm.equals("daemon")) {
+                validateNum(args.length, 1);
+                repo.daemon();
+            } else if (comm.equals("repack") || comm.equals("gc")) {
+                validateNum(args.length, 1);
+                repo.repack();
             } else if (comm.equals("diff")) {
                 diff(args);
             } else if (comm.equals("checkout")) {
                 checkout(args);
             } else {
                 System.out.println("No command with that name exists.");
-                System.exit(0);
+                exit(0);
             }
         }
+        if (Config.getBoolean("core.cacheStats", false)) {
+            System.err.println(Repo.cache());
+        }
+    }
+
+    /** Ends the command with exit status CODE: exits the JVM, unless the
+     *  command is being served by a daemon, which must keep running. */
+    static void exit(int code) {
+        if (Daemon.serving()) {
+            throw new Daemon.Exit(code);
+        }
+        System.exit(code);
     }
 
     public static void diff(String... args) throws IOException {
@@ -71,7 +96,7 @@ public class Main {
             repo.diff();
         } else {
             System.out.println("Incorrect operands.");
-            System.exit(0);
+            exit(0);
         }
     }
 
@@ -87,14 +112,14 @@ public class Main {
             repo.checkoutCom(args[1], args[3]);
         } else {
             System.out.println("Incorrect operands.");
-            System.exit(0);
+            exit(0);
         }
     }
 
     public static void validateNum(int length, int expected) {
         if (expected != length) {
             System.out.println("Incorrect operands.");
-            System.exit(0);
+            exit(0);
         }
     }
 
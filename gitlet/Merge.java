@@ -0,0 +1,244 @@
+package gitlet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** A three-way merge of the trees of a split point, the current commit
+ *  and a given commit, each a map from file name to blob id. The three
+ *  sorted maps are walked together once, deciding each name from blob
+ *  ids alone: a name keeps the current blob unless only the given side
+ *  changed it, in which case it takes the given blob. Names changed on
+ *  both sides, in different ways, are merged line by line as diff3
+ *  does, in parallel: hunks that do not overlap are combined, and each
+ *  overlapping pair of hunks becomes a conflict written between
+ *  "<<<<<<< HEAD", "=======" and ">>>>>>>" lines. A name deleted on one
+ *  side and changed on the other, or holding a NUL byte on either side,
+ *  conflicts as a whole file. Merged and conflicted contents are written
+ *  to the object store as new blobs, once each however many names merged
+ *  to the same content. */
+public class Merge {
+
+    /** first line of the current side of a conflict. */
+    private static final String OURS = "<<<<<<< HEAD\n";
+
+    /** line between the two sides of a conflict. */
+    private static final String SEPARATOR = "=======\n";
+
+    /** last line of a conflict. */
+    private static final String THEIRS = ">>>>>>>\n";
+
+    /** where blobs are read and written. */
+    private ObjectStore _store;
+
+    /** the merged tree. */
+    private TreeMap<String, String> _result;
+
+    /** true if any name conflicted. */
+    private volatile boolean _conflicted;
+
+    /** Merges GIVEN into CURR, whose common ancestor has tree SPLIT,
+     *  reading and writing blobs in STORE. */
+    public Merge(ObjectStore store, SortedMap<String, String> split,
+                 SortedMap<String, String> curr,
+                 SortedMap<String, String> given) {
+        _store = store;
+        _result = new TreeMap<String, String>(curr);
+        List<String> both = new ArrayList<String>();
+        Iterator<String> names = union(split, curr, given);
+        while (names.hasNext()) {
+            String name = names.next();
+            String base = split.get(name);
+            String ours = curr.get(name);
+            String theirs = given.get(name);
+            if (Objects.equals(ours, theirs)
+                    || Objects.equals(base, theirs)) {
+                continue;
+            } else if (Objects.equals(base, ours)) {
+                if (theirs == null) {
+                    _result.remove(name);
+                } else {
+                    _result.put(name, theirs);
+                }
+            } else {
+                both.add(name);
+            }
+        }
+        ConcurrentHashMap<String, String> merged =
+                new ConcurrentHashMap<String, String>();
+        ConcurrentHashMap<String, byte[]> toWrite =
+                new ConcurrentHashMap<String, byte[]>();
+        Repo.parallel(both, name -> {
+            byte[] bytes = merge(split.get(name), curr.get(name),
+                    given.get(name));
+            String sha1 = Utils.sha1(bytes);
+            toWrite.putIfAbsent(sha1, bytes);
+            merged.put(name, sha1);
+        });
+        Repo.parallel(toWrite.keySet(), sha1 -> _store.writeContents(
+                ObjectStore.BLOB, sha1, toWrite.get(sha1)));
+        _result.putAll(merged);
+    }
+
+    /** Returns the merged tree. */
+    public TreeMap<String, String> result() {
+        return _result;
+    }
+
+    /** Returns true if any file conflicted. */
+    public boolean conflicted() {
+        return _conflicted;
+    }
+
+    /** Returns the names in any of the sorted maps A, B and C, in order,
+     *  each once. */
+    private static Iterator<String> union(SortedMap<String, String> a,
+                                          SortedMap<String, String> b,
+                                          SortedMap<String, String> c) {
+        List<Iterator<String>> its = Arrays.asList(a.keySet().iterator(),
+                b.keySet().iterator(), c.keySet().iterator());
+        String[] heads = new String[its.size()];
+        for (int i = 0; i < heads.length; i += 1) {
+            heads[i] = its.get(i).hasNext() ? its.get(i).next() : null;
+        }
+        return new Iterator<String>() {
+            @Override
+            public boolean hasNext() {
+                return heads[0] != null || heads[1] != null
+                        || heads[2] != null;
+            }
+
+            @Override
+            public String next() {
+                String least = null;
+                for (String head: heads) {
+                    if (head != null
+                            && (least == null || head.compareTo(least) < 0)) {
+                        least = head;
+                    }
+                }
+                for (int i = 0; i < heads.length; i += 1) {
+                    if (least.equals(heads[i])) {
+                        heads[i] = its.get(i).hasNext()
+                                ? its.get(i).next() : null;
+                    }
+                }
+                return least;
+            }
+        };
+    }
+
+    /** Returns the content merging OURS and THEIRS, both changed from
+     *  BASE (any of which may be null for a missing file). */
+    private byte[] merge(String base, String ours, String theirs) {
+        String baseText = text(base);
+        String oursText = text(ours);
+        String theirsText = text(theirs);
+        StringBuilder out = new StringBuilder();
+        if (ours == null || theirs == null || oursText.indexOf('\0') >= 0
+                || theirsText.indexOf('\0') >= 0) {
+            out.append(OURS).append(oursText).append(SEPARATOR)
+                    .append(theirsText).append(THEIRS);
+            _conflicted = true;
+        } else if (merge3(lines(baseText), lines(oursText),
+                lines(theirsText), out)) {
+            _conflicted = true;
+        }
+        return out.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    /** Returns the content of blob SHA1, one char per byte, or "" if SHA1
+     *  is null. */
+    private String text(String sha1) {
+        if (sha1 == null) {
+            return "";
+        }
+        return new String(_store.readContents(sha1),
+                StandardCharsets.ISO_8859_1);
+    }
+
+    /** Returns the lines of TEXT, each with its newline, if it has one. */
+    static List<String> lines(String text) {
+        List<String> result = new ArrayList<String>();
+        int start = 0;
+        while (start < text.length()) {
+            int end = text.indexOf('\n', start);
+            end = end < 0 ? text.length() : end + 1;
+            result.add(text.substring(start, end));
+            start = end;
+        }
+        return result;
+    }
+
+    /** Appends to OUT the merge of OURS and THEIRS, both derived from
+     *  BASE, returning true if any of their changes conflict. */
+    static boolean merge3(List<String> base, List<String> ours,
+                          List<String> theirs, StringBuilder out) {
+        int[] a = LineDiff.diff(base, ours);
+        int[] b = LineDiff.diff(base, theirs);
+        int i = 0;
+        int j = 0;
+        int pos = 0;
+        int deltaA = 0;
+        int deltaB = 0;
+        boolean conflict = false;
+        while (i < a.length || j < b.length) {
+            int lo = Math.min(i < a.length ? a[i] : Integer.MAX_VALUE,
+                    j < b.length ? b[j] : Integer.MAX_VALUE);
+            int hi = lo;
+            int i2 = i;
+            int j2 = j;
+            int growA = 0;
+            int growB = 0;
+            while (true) {
+                if (i2 < a.length && a[i2] <= hi) {
+                    hi = Math.max(hi, a[i2] + a[i2 + 1]);
+                    growA += a[i2 + 3] - a[i2 + 1];
+                    i2 += 4;
+                } else if (j2 < b.length && b[j2] <= hi) {
+                    hi = Math.max(hi, b[j2] + b[j2 + 1]);
+                    growB += b[j2 + 3] - b[j2 + 1];
+                    j2 += 4;
+                } else {
+                    break;
+                }
+            }
+            append(out, base.subList(pos, lo));
+            List<String> chunkA = ours.subList(lo + deltaA,
+                    hi + deltaA + growA);
+            List<String> chunkB = theirs.subList(lo + deltaB,
+                    hi + deltaB + growB);
+            if (i2 == i || chunkA.equals(chunkB)) {
+                append(out, chunkB);
+            } else if (j2 == j) {
+                append(out, chunkA);
+            } else {
+                out.append(OURS);
+                append(out, chunkA);
+                out.append(SEPARATOR);
+                append(out, chunkB);
+                out.append(THEIRS);
+                conflict = true;
+            }
+            deltaA += growA;
+            deltaB += growB;
+            pos = hi;
+            i = i2;
+            j = j2;
+        }
+        append(out, base.subList(pos, base.size()));
+        return conflict;
+    }
+
+    private static void append(StringBuilder out, List<String> lines) {
+        for (String line: lines) {
+            out.append(line);
+        }
+    }
+}
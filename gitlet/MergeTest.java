@@ -0,0 +1,167 @@
+package gitlet;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/** Tests of three-way merges, line by line and of whole trees. */
+public class MergeTest {
+
+    @Rule
+    public TemporaryFolder _tmp = new TemporaryFolder();
+
+    /** Returns the lines of TEXT, with "|" standing for newlines. */
+    private static List<String> lines(String text) {
+        return Merge.lines(text.replace('|', '\n'));
+    }
+
+    /** Asserts that merging OURS and THEIRS from BASE gives EXPECTED,
+     *  conflicting iff CONFLICT, all with "|" standing for newlines. */
+    private static void assertMerge(String base, String ours, String theirs,
+                                    String expected, boolean conflict) {
+        StringBuilder out = new StringBuilder();
+        assertEquals(conflict,
+                Merge.merge3(lines(base), lines(ours), lines(theirs), out));
+        assertEquals(expected.replace('|', '\n'), out.toString());
+    }
+
+    @Test
+    public void separateChangesCombine() {
+        assertMerge("a|b|c|d|e|f|", "a|B|c|d|e|f|", "a|b|c|d|E|f|",
+                "a|B|c|d|E|f|", false);
+        assertMerge("a|b|c|d|e|f|", "a|c|d|e|f|", "a|b|c|d|e|f|g|",
+                "a|c|d|e|f|g|", false);
+        assertMerge("a|b|c|d|e|f|", "x|a|b|c|d|e|f|", "a|b|c|f|",
+                "x|a|b|c|f|", false);
+    }
+
+    @Test
+    public void changesOnOneSideAreTaken() {
+        assertMerge("a|b|c|", "a|b|c|", "a|x|y|c|", "a|x|y|c|", false);
+        assertMerge("a|b|c|", "c|", "a|b|c|", "c|", false);
+        assertMerge("", "", "a|", "a|", false);
+    }
+
+    @Test
+    public void sameChangeOnBothSidesDoesNotConflict() {
+        assertMerge("a|b|c|", "a|X|c|", "a|X|c|", "a|X|c|", false);
+        assertMerge("a|b|c|", "a|c|", "a|c|", "a|c|", false);
+    }
+
+    @Test
+    public void overlappingChangesConflict() {
+        assertMerge("a|b|c|", "a|X|c|", "a|Y|c|",
+                "a|<<<<<<< HEAD|X|=======|Y|>>>>>>>|c|", true);
+        assertMerge("a|b|c|d|", "a|X|Y|d|", "a|b|Z|d|",
+                "a|<<<<<<< HEAD|X|Y|=======|b|Z|>>>>>>>|d|", true);
+        assertMerge("a|b|c|", "a|b|c|x|", "a|b|c|y|",
+                "a|b|c|<<<<<<< HEAD|x|=======|y|>>>>>>>|", true);
+        assertMerge("a|b|c|", "a|c|", "a|B|c|",
+                "a|<<<<<<< HEAD|=======|B|>>>>>>>|c|", true);
+    }
+
+    @Test
+    public void adjacentChangesConflictAsInDiff3() {
+        assertMerge("a|b|c|d|", "a|B|c|d|", "a|b|C|d|",
+                "a|<<<<<<< HEAD|B|c|=======|b|C|>>>>>>>|d|", true);
+    }
+
+    @Test
+    public void conflictsAreSeparateFromCleanChanges() {
+        assertMerge("a|b|c|d|e|f|g|", "A|b|c|X|e|f|g|", "a|b|c|Y|e|f|G|",
+                "A|b|c|<<<<<<< HEAD|X|=======|Y|>>>>>>>|e|f|G|", true);
+    }
+
+    @Test
+    public void mergeWithAnUnchangedSideIsTheOtherSide() {
+        Random random = new Random(22);
+        for (int trial = 0; trial < 300; trial += 1) {
+            List<String> base = randomLines(random, random.nextInt(30));
+            List<String> other = randomLines(random, random.nextInt(30));
+            StringBuilder out = new StringBuilder();
+            assertFalse(Merge.merge3(base, base, other, out));
+            assertEquals(String.join("", other), out.toString());
+            out = new StringBuilder();
+            assertFalse(Merge.merge3(base, other, base, out));
+            assertEquals(String.join("", other), out.toString());
+        }
+    }
+
+    private static List<String> randomLines(Random random, int count) {
+        List<String> result = new ArrayList<String>();
+        for (int i = 0; i < count; i += 1) {
+            result.add((char) ('a' + random.nextInt(4)) + "\n");
+        }
+        return result;
+    }
+
+    /** Returns the id of a blob with TEXT, stored in STORE. */
+    private static String blob(ObjectStore store, String text) {
+        byte[] content = text.getBytes(StandardCharsets.ISO_8859_1);
+        String sha1 = Utils.sha1(content);
+        store.writeContents(ObjectStore.BLOB, sha1, content);
+        return sha1;
+    }
+
+    @Test
+    public void treesMergeByName() throws IOException {
+        ObjectStore store = new ObjectStore(_tmp.newFolder());
+        String base = blob(store, "a\nb\nc\n");
+        String ours = blob(store, "A\nb\nc\n");
+        String theirs = blob(store, "a\nb\nC\n");
+        String other = blob(store, "other\n");
+        TreeMap<String, String> split = new TreeMap<String, String>(Map.of(
+                "both", base, "given", base, "gone", base, "kept", base));
+        TreeMap<String, String> curr = new TreeMap<String, String>(Map.of(
+                "both", ours, "given", base, "gone", base, "kept", ours,
+                "new", other));
+        TreeMap<String, String> given = new TreeMap<String, String>(Map.of(
+                "both", theirs, "given", theirs, "kept", base,
+                "added", other));
+        Merge merge = new Merge(store, split, curr, given);
+        assertFalse(merge.conflicted());
+        TreeMap<String, String> result = merge.result();
+        assertEquals(Map.of("both", Utils.sha1("A\nb\nC\n"), "given", theirs,
+                "kept", ours, "new", other, "added", other), result);
+        assertArrayEquals("A\nb\nC\n".getBytes(StandardCharsets.ISO_8859_1),
+                store.readContents(result.get("both")));
+    }
+
+    @Test
+    public void namesMergingAlikeShareOneBlob() throws IOException {
+        ObjectStore store = new ObjectStore(_tmp.newFolder());
+        String base = blob(store, "base\n");
+        String ours = blob(store, "ours\n");
+        String theirs = blob(store, "theirs\n");
+        TreeMap<String, String> split = new TreeMap<String, String>();
+        TreeMap<String, String> curr = new TreeMap<String, String>();
+        TreeMap<String, String> given = new TreeMap<String, String>();
+        for (int i = 0; i < 200; i += 1) {
+            split.put("f" + i, base);
+            curr.put("f" + i, ours);
+            given.put("f" + i, theirs);
+        }
+        curr.remove("f0");
+        List<String> before = store.looseIds();
+        Merge merge = new Merge(store, split, curr, given);
+        assertTrue(merge.conflicted());
+        String conflict = "<<<<<<< HEAD\nours\n=======\ntheirs\n>>>>>>>\n";
+        String deleted = "<<<<<<< HEAD\n=======\ntheirs\n>>>>>>>\n";
+        for (int i = 1; i < 200; i += 1) {
+            assertEquals(Utils.sha1(conflict), merge.result().get("f" + i));
+        }
+        assertEquals(Utils.sha1(deleted), merge.result().get("f0"));
+        assertEquals(before.size() + 2, store.looseIds().size());
+        assertArrayEquals(conflict.getBytes(StandardCharsets.ISO_8859_1),
+                store.readContents(Utils.sha1(conflict)));
+    }
+}
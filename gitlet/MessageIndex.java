@@ -0,0 +1,225 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/** On-disk hash table from commit messages to the commits carrying them,
+ *  so that find looks at only the commits whose message hashes alike
+ *  instead of reading every commit. The file holds a magic number and
+ *  version, the number of slots (a power of two), the number of commits
+ *  indexed and then the slots, each a 64-bit hash of a message (0 for an
+ *  empty slot) and the raw 20-byte id of a commit with that message.
+ *  Collisions are resolved by linear probing, and the table is doubled
+ *  before it is half full, so a lookup or insertion touches a few slots.
+ *  Insertions write one slot in place; the table is read through a
+ *  memory map. Since only hashes are stored, callers must check the
+ *  messages of the commits returned. */
+public class MessageIndex {
+
+    /** magic number at the start of the index, "MIDX". */
+    private static final int MAGIC = 0x4d494458;
+
+    /** version of the index layout. */
+    private static final int VERSION = 1;
+
+    /** bytes before the first slot. */
+    private static final int HEADER = 16;
+
+    /** number of raw bytes in an id. */
+    private static final int ID_BYTES = ObjectStore.UID_LENGTH / 2;
+
+    /** bytes in a slot: hash and commit id. */
+    private static final int SLOT = 8 + ID_BYTES;
+
+    /** slots in the smallest table. */
+    private static final int MIN_SLOTS = 16;
+
+    /** the index file. */
+    private File _file;
+
+    /** mapped contents of _file, or null before the first lookup. */
+    private ByteBuffer _map;
+
+    /** stamp of _file when _map was loaded. */
+    private String _stamp;
+
+    public MessageIndex(File file) {
+        _file = file;
+    }
+
+    /** Forgets the loaded table if the file has changed on disk since. */
+    public void refresh() {
+        if (_map != null && !FileStamp.of(_file).equals(_stamp)) {
+            _map = null;
+        }
+    }
+
+    private void load() {
+        if (_map != null) {
+            return;
+        }
+        _stamp = FileStamp.of(_file);
+        if (!_file.exists()) {
+            _map = ByteBuffer.allocate(HEADER);
+            _map.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, 0)
+                    .putInt(12, 0);
+            return;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(_file, "r");
+             FileChannel channel = raf.getChannel()) {
+            _map = channel.map(FileChannel.MapMode.READ_ONLY,
+                    0, channel.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (_map.getInt(0) != MAGIC || _map.getInt(4) != VERSION
+                || _map.capacity() != HEADER + slots() * SLOT) {
+            throw new IllegalArgumentException("corrupt message index");
+        }
+    }
+
+    private int slots() {
+        return _map.getInt(8);
+    }
+
+    /** Returns the number of commits indexed. */
+    public int size() {
+        load();
+        return _map.getInt(12);
+    }
+
+    /** Returns the ids of the commits whose message may be MESSAGE. */
+    public List<String> find(String message) {
+        load();
+        List<String> result = new ArrayList<String>();
+        int mask = slots() - 1;
+        if (mask < 0) {
+            return result;
+        }
+        long hash = hash(message);
+        for (int i = (int) hash & mask; slotHash(i) != 0;
+             i = (i + 1) & mask) {
+            if (slotHash(i) == hash) {
+                result.add(ObjectStore.hexId(_map, HEADER + i * SLOT + 8));
+            }
+        }
+        return result;
+    }
+
+    /** Records that the commit SHA1 has message MESSAGE. Does nothing if
+     *  it is already recorded. */
+    public void add(String message, String sha1) {
+        load();
+        if ((size() + 1) * 2 > slots()) {
+            rewrite(Math.max(MIN_SLOTS, slots() * 2), new long[0],
+                    new byte[0][]);
+        }
+        long hash = hash(message);
+        byte[] raw = ObjectStore.rawId(sha1);
+        int mask = slots() - 1;
+        int i = (int) hash & mask;
+        for (; slotHash(i) != 0; i = (i + 1) & mask) {
+            if (slotHash(i) == hash && sha1.equals(
+                    ObjectStore.hexId(_map, HEADER + i * SLOT + 8))) {
+                return;
+            }
+        }
+        ByteBuffer slot = ByteBuffer.allocate(SLOT).putLong(hash).put(raw);
+        ByteBuffer count = ByteBuffer.allocate(4).putInt(0, size() + 1);
+        slot.flip();
+        try (RandomAccessFile raf = new RandomAccessFile(_file, "rw");
+             FileChannel channel = raf.getChannel()) {
+            channel.write(slot, HEADER + (long) i * SLOT);
+            channel.write(count, 12);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        _map = null;
+    }
+
+    /** Replaces the whole index with MESSAGES, the message of each
+     *  commit by id. */
+    public void rebuild(Map<String, String> messages) {
+        long[] hashes = new long[messages.size()];
+        byte[][] ids = new byte[messages.size()][];
+        int k = 0;
+        for (Map.Entry<String, String> e: messages.entrySet()) {
+            hashes[k] = hash(e.getValue());
+            ids[k] = ObjectStore.rawId(e.getKey());
+            k += 1;
+        }
+        _map = ByteBuffer.allocate(HEADER);
+        _map.putInt(8, 0).putInt(12, 0);
+        int slots = MIN_SLOTS;
+        while (slots < hashes.length * 2 + 2) {
+            slots *= 2;
+        }
+        rewrite(slots, hashes, ids);
+    }
+
+    /** Atomically replaces the index with one of SLOTS slots holding the
+     *  entries now in it and those with HASHES and raw IDS. */
+    private void rewrite(int slots, long[] hashes, byte[][] ids) {
+        ByteBuffer out = ByteBuffer.allocate(HEADER + slots * SLOT);
+        int count = size();
+        out.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, slots);
+        for (int i = 0; i < slots(); i += 1) {
+            if (slotHash(i) != 0) {
+                byte[] raw = new byte[ID_BYTES];
+                _map.get(HEADER + i * SLOT + 8, raw);
+                place(out, slots, slotHash(i), raw);
+            }
+        }
+        for (int k = 0; k < hashes.length; k += 1) {
+            place(out, slots, hashes[k], ids[k]);
+        }
+        out.putInt(12, count + hashes.length);
+        File temp = new File(_file.getPath() + ".lock");
+        Utils.writeContents(temp, out.array());
+        try {
+            Files.move(temp.toPath(), _file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        _map = null;
+        load();
+    }
+
+    /** Puts HASH and RAW in the first free slot of OUT, a table of SLOTS
+     *  slots, at or after the slot HASH maps to. */
+    private static void place(ByteBuffer out, int slots, long hash,
+                              byte[] raw) {
+        int i = (int) hash & (slots - 1);
+        while (out.getLong(HEADER + i * SLOT) != 0) {
+            i = (i + 1) & (slots - 1);
+        }
+        out.putLong(HEADER + i * SLOT, hash);
+        out.put(HEADER + i * SLOT + 8, raw);
+    }
+
+    /** Returns the hash stored in slot I. */
+    private long slotHash(int i) {
+        return _map.getLong(HEADER + i * SLOT);
+    }
+
+    /** Returns the 64-bit FNV-1a hash of MESSAGE, never 0. */
+    static long hash(String message) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b: message.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash == 0 ? 1 : hash;
+    }
+}
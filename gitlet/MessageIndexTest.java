@@ -0,0 +1,126 @@
+package gitlet;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/** Tests of the on-disk hash table from messages to commits. */
+public class MessageIndexTest {
+
+    @Rule
+    public TemporaryFolder _tmp = new TemporaryFolder();
+
+    /** the index file. */
+    private File _file;
+
+    @Before
+    public void setUp() throws IOException {
+        _file = new File(_tmp.newFolder(), "messages");
+    }
+
+    private static String id(int i) {
+        return Utils.sha1("commit " + i);
+    }
+
+    /** Asserts that INDEX finds exactly the commits of MESSAGE in
+     *  MESSAGES, the message of each commit by id. */
+    private static void assertFinds(MessageIndex index,
+                                    Map<String, String> messages,
+                                    String message) {
+        Set<String> expected = new HashSet<String>();
+        for (Map.Entry<String, String> entry: messages.entrySet()) {
+            if (entry.getValue().equals(message)) {
+                expected.add(entry.getKey());
+            }
+        }
+        List<String> found = index.find(message);
+        assertEquals(expected.size(), found.size());
+        assertEquals(expected, new HashSet<String>(found));
+    }
+
+    /** Returns the number of slots in the index file. */
+    private long slots() {
+        return (_file.length() - 16) / (8 + ObjectStore.UID_LENGTH / 2);
+    }
+
+    @Test
+    public void duplicateMessagesFindEveryCommit() {
+        MessageIndex index = new MessageIndex(_file);
+        Map<String, String> messages = new HashMap<String, String>();
+        for (int i = 0; i < 40; i += 1) {
+            String message = i % 3 == 0 ? "same" : "message " + i;
+            index.add(message, id(i));
+            messages.put(id(i), message);
+        }
+        index.add("same", id(0));
+        index.add("same", id(3));
+        assertEquals(40, index.size());
+        assertFinds(index, messages, "same");
+        assertFinds(index, messages, "message 1");
+        assertFinds(index, messages, "missing");
+        assertFinds(new MessageIndex(_file), messages, "same");
+    }
+
+    @Test
+    public void tableGrowsBeforeItIsHalfFull() {
+        MessageIndex index = new MessageIndex(_file);
+        Map<String, String> messages = new HashMap<String, String>();
+        assertTrue(index.find("m0").isEmpty());
+        for (int i = 0; i < 1000; i += 1) {
+            String message = "m" + i % 37;
+            index.add(message, id(i));
+            messages.put(id(i), message);
+            long slots = slots();
+            assertEquals(0, slots & (slots - 1));
+            assertTrue(index.size() * 2 <= slots);
+        }
+        assertEquals(1000, index.size());
+        MessageIndex reopened = new MessageIndex(_file);
+        assertEquals(1000, reopened.size());
+        for (int m = 0; m < 37; m += 1) {
+            assertFinds(reopened, messages, "m" + m);
+        }
+    }
+
+    @Test
+    public void rebuildReplacesEveryEntry() {
+        MessageIndex index = new MessageIndex(_file);
+        index.add("old", id(0));
+        Map<String, String> messages = new HashMap<String, String>();
+        for (int i = 1; i < 100; i += 1) {
+            messages.put(id(i), "r" + i % 5);
+        }
+        index.rebuild(messages);
+        assertEquals(99, index.size());
+        assertTrue(index.find("old").isEmpty());
+        index.add("r1", id(100));
+        messages.put(id(100), "r1");
+        for (int r = 0; r < 5; r += 1) {
+            assertFinds(new MessageIndex(_file), messages, "r" + r);
+        }
+    }
+
+    @Test
+    public void refreshRereadsAnIndexChangedElsewhere() {
+        MessageIndex index = new MessageIndex(_file);
+        index.add("one", id(1));
+        assertEquals(List.of(id(1)), index.find("one"));
+        MessageIndex other = new MessageIndex(_file);
+        for (int i = 2; i < 20; i += 1) {
+            other.add("one", id(i));
+        }
+        index.refresh();
+        assertEquals(19, index.size());
+        assertEquals(19, index.find("one").size());
+    }
+}
@@ -0,0 +1,334 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.io.ObjectStreamField;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+/** Conversion of a repository in the layouts used before the object
+ *  store into one. Those kept file contents in .gitlet/blobs and
+ *  Java-serialized commits in .gitlet/commits, each a file named by id,
+ *  either directly in the store or, in later versions, named by the
+ *  rest of its id in a fan-out subdirectory named by the first
+ *  ObjectStore.FANOUT characters. Each commit held its files as a map
+ *  from names to serialized Blob objects or, in later versions, the id
+ *  of a serialized Tree in .gitlet/trees. Blobs are hashed again into
+ *  the store, every commit gets a tree of the new blob ids, and the
+ *  commits are re-encoded under their old ids, so branches and the head
+ *  still name them. Old objects are read as the mirror classes here,
+ *  which have the same serialized fields, so the current classes need
+ *  not keep them. */
+public class Migration {
+
+    /** by mirror class, the name of the old class it reads. */
+    private static final Map<Class<?>, String> MIRRORS = Map.of(
+            OldCommit.class, "gitlet.Commit",
+            OldBlob.class, "gitlet.Blob",
+            TreeCommit.class, "gitlet.Commit",
+            OldTree.class, "gitlet.Tree");
+
+    /** the old .gitlet directory. */
+    private File _dir;
+
+    /** store receiving the blobs and trees. */
+    private ObjectStore _objects;
+
+    /** new blob ids, by old id. */
+    private HashMap<String, String> _blobIds = new HashMap<String, String>();
+
+    /** files of the old tree store, by id. */
+    private TreeMap<String, File> _trees;
+
+    public Migration(File dir, ObjectStore objects) {
+        _dir = dir;
+        _objects = objects;
+    }
+
+    /** Returns true if DIR holds a repository in the old layout. */
+    static boolean needed(File dir) {
+        return new File(dir, "commits").isDirectory();
+    }
+
+    /** Stores the blobs of the old repository and a tree for each of its
+     *  commits, and returns its commits re-encoded, each after its
+     *  parents. */
+    public List<Commit> commits() {
+        for (Map.Entry<String, File> blob: files("blobs").entrySet()) {
+            String sha1 = Blob.hash(blob.getValue());
+            _objects.writeFile(sha1, blob.getValue());
+            _blobIds.put(blob.getKey(), sha1);
+        }
+        _trees = files("trees");
+        HashMap<String, Commit> commits = new HashMap<String, Commit>();
+        for (Map.Entry<String, File> file: files("commits").entrySet()) {
+            commits.put(file.getKey(), convert(file.getKey(),
+                    readOld(file.getValue(), Object.class)));
+        }
+        return CommitGraph.parentsFirst(commits);
+    }
+
+    /** Returns OLD, the commit ID in either old shape, re-encoded with a
+     *  tree of new blob ids. */
+    private Commit convert(String id, Object old) {
+        TreeMap<String, String> files = new TreeMap<String, String>();
+        if (old instanceof OldCommit) {
+            OldCommit commit = (OldCommit) old;
+            for (Map.Entry<String, Object> entry
+                    : commit._blobObject.entrySet()) {
+                files.put(entry.getKey(), blobId((OldBlob) entry.getValue()));
+            }
+            return Commit.of(id, Tree.write(_objects, files),
+                    commit._parentSha1, commit._parentSha2, commit._time,
+                    commit._message);
+        } else if (old instanceof TreeCommit) {
+            TreeCommit commit = (TreeCommit) old;
+            flatten(commit._treeSha1, "", files);
+            return Commit.of(id, Tree.write(_objects, files),
+                    commit._parentSha1, commit._parentSha2, commit._time,
+                    commit._message);
+        }
+        throw new IllegalArgumentException("unknown commit " + id);
+    }
+
+    /** Adds every file under the old tree SHA1 to FILES, by path under
+     *  PREFIX, with its new blob id. */
+    private void flatten(String sha1, String prefix,
+                         TreeMap<String, String> files) {
+        if (!_trees.containsKey(sha1)) {
+            throw new IllegalArgumentException("no tree " + sha1);
+        }
+        OldTree tree = readOld(_trees.get(sha1), OldTree.class);
+        for (Map.Entry<String, String> entry: tree._blobs.entrySet()) {
+            files.put(prefix + entry.getKey(),
+                    _blobIds.getOrDefault(entry.getValue(),
+                            entry.getValue()));
+        }
+        for (Map.Entry<String, String> entry: tree._trees.entrySet()) {
+            flatten(entry.getValue(), prefix + entry.getKey() + "/", files);
+        }
+    }
+
+    /** Returns the stage in FILE with its blob ids mapped to the ids the
+     *  blobs were given by commits. */
+    public StagingArea stage(File file) {
+        StagingArea old = StagingArea.read(file);
+        StagingArea stage = new StagingArea();
+        for (Map.Entry<String, String> entry
+                : old.getAddingStage().entrySet()) {
+            stage.addFileToStage("add", entry.getKey(),
+                    _blobIds.getOrDefault(entry.getValue(),
+                            entry.getValue()));
+        }
+        for (Map.Entry<String, String> entry
+                : old.getRemovingStage().entrySet()) {
+            stage.addFileToStage("remove", entry.getKey(),
+                    _blobIds.getOrDefault(entry.getValue(),
+                            entry.getValue()));
+        }
+        return stage;
+    }
+
+    /** Deletes the old stores, once everything in them is converted. */
+    public void clean() {
+        for (String name: new String[] {"blobs", "blobObject", "commits",
+                "trees"}) {
+            Path dir = new File(_dir, name).toPath();
+            if (!Files.isDirectory(dir)) {
+                continue;
+            }
+            try (Stream<Path> paths = Files.walk(dir)) {
+                paths.sorted(Comparator.reverseOrder())
+                        .forEach(path -> path.toFile().delete());
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+    }
+
+    /** Returns the files in the old store NAME by id, whether flat or
+     *  fanned out, or none if it is missing. */
+    private TreeMap<String, File> files(String name) {
+        TreeMap<String, File> result = new TreeMap<String, File>();
+        File[] files = new File(_dir, name).listFiles();
+        if (files == null) {
+            return result;
+        }
+        for (File file: files) {
+            if (file.isFile()) {
+                result.put(file.getName(), file);
+            } else if (file.getName().length() == ObjectStore.FANOUT
+                    && file.listFiles() != null) {
+                for (File shard: file.listFiles()) {
+                    if (shard.isFile()) {
+                        result.put(file.getName() + shard.getName(), shard);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Returns the new id of the blob OLD, storing its content if its
+     *  file was not in the old blob store. */
+    private String blobId(OldBlob old) {
+        String sha1 = _blobIds.get(old._blobSha1);
+        if (sha1 == null) {
+            sha1 = Utils.sha1(old._content);
+            _objects.writeContents(ObjectStore.BLOB, sha1, old._content);
+            _blobIds.put(old._blobSha1, sha1);
+        }
+        return sha1;
+    }
+
+    /** Returns the object of TYPE serialized in FILE by an old
+     *  version. */
+    static <T> T readOld(File file, Class<T> type) {
+        try (ObjectInputStream in = new MirrorInput(
+                new FileInputStream(file))) {
+            return type.cast(in.readObject());
+        } catch (IOException | ClassCastException
+                | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns true if A and B have the same serialized fields. */
+    private static boolean sameFields(ObjectStreamClass a,
+                                      ObjectStreamClass b) {
+        ObjectStreamField[] fieldsA = a.getFields();
+        ObjectStreamField[] fieldsB = b.getFields();
+        if (fieldsA.length != fieldsB.length) {
+            return false;
+        }
+        for (int i = 0; i < fieldsA.length; i += 1) {
+            if (!fieldsA[i].getName().equals(fieldsB[i].getName())
+                    || fieldsA[i].getTypeCode() != fieldsB[i].getTypeCode()
+                    || !Objects.equals(fieldsA[i].getTypeString(),
+                            fieldsB[i].getTypeString())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** A stream of objects serialized by an old version, which reads
+     *  each class that has a mirror in MIRRORS with the same serialized
+     *  fields as that mirror. */
+    private static class MirrorInput extends ObjectInputStream {
+        MirrorInput(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected ObjectStreamClass readClassDescriptor()
+                throws IOException, ClassNotFoundException {
+            ObjectStreamClass desc = super.readClassDescriptor();
+            for (Map.Entry<Class<?>, String> mirror: MIRRORS.entrySet()) {
+                ObjectStreamClass local =
+                        ObjectStreamClass.lookup(mirror.getKey());
+                if (mirror.getValue().equals(desc.getName())
+                        && sameFields(desc, local)) {
+                    return local;
+                }
+            }
+            return desc;
+        }
+    }
+
+    /** The serialized fields of a commit of the first version. */
+    private static class OldCommit implements Serializable {
+        /** serialVersionUID of the mirror; the old one is not checked. */
+        private static final long serialVersionUID = 1L;
+
+        /** the time when the commit was made. */
+        private String _time;
+
+        /** message of the commit. */
+        private String _message;
+
+        /** parent commit's sha1. */
+        private String _parentSha1;
+
+        /** second parent's sha1. */
+        private String _parentSha2;
+
+        /** <fileName, Blob>. */
+        private TreeMap<String, Object> _blobObject;
+
+        /** sha1 of the commit. */
+        private String _comSha1;
+
+        /** shows if the commit is a merge commit. */
+        private boolean mergeCommit;
+    }
+
+    /** The serialized fields of a commit of a tree. */
+    private static class TreeCommit implements Serializable {
+        /** serialVersionUID of the mirror; the old one is not checked. */
+        private static final long serialVersionUID = 1L;
+
+        /** the time when the commit was made. */
+        private String _time;
+
+        /** message of the commit. */
+        private String _message;
+
+        /** parent commit's sha1. */
+        private String _parentSha1;
+
+        /** second parent's sha1. */
+        private String _parentSha2;
+
+        /** sha1 of the root tree. */
+        private String _treeSha1;
+
+        /** sha1 of the commit. */
+        private String _comSha1;
+
+        /** shows if the commit is a merge commit. */
+        private boolean mergeCommit;
+    }
+
+    /** The serialized fields of a tree. */
+    private static class OldTree implements Serializable {
+        /** serialVersionUID of the mirror; the old one is not checked. */
+        private static final long serialVersionUID = 1L;
+
+        /** <fileName, blob sha1> for files directly in this directory. */
+        private TreeMap<String, String> _blobs;
+
+        /** <dirName, tree sha1> for subdirectories. */
+        private TreeMap<String, String> _trees;
+    }
+
+    /** The serialized fields of a blob of the first version. */
+    private static class OldBlob implements Serializable {
+        /** serialVersionUID of the mirror; the old one is not checked. */
+        private static final long serialVersionUID = 1L;
+
+        /** old id of the blob. */
+        private String _blobSha1;
+
+        /** the content of the blob. */
+        private byte[] _content;
+
+        /** content of the blob, as a String. */
+        private String _contString;
+
+        /** the file that the blob was made from. */
+        private File _file;
+    }
+}
@@ -0,0 +1,354 @@
+package gitlet;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/** Tests of importing a repository in the first layout. */
+public class MigrationTest {
+
+    @Rule
+    public TemporaryFolder _tmp = new TemporaryFolder();
+
+    /** the old .gitlet directory. */
+    private File _dir;
+
+    /** true if the old stores are fanned out by the first characters of
+     *  each id. */
+    private boolean _fanout;
+
+    /** old commits, by id. */
+    private HashMap<String, OldCommit> _commits =
+            new HashMap<String, OldCommit>();
+
+    /** A commit with the serialized fields of the first version. */
+    static class OldCommit implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private String _time;
+        private String _message;
+        private String _parentSha1;
+        private String _parentSha2;
+        private TreeMap<String, OldBlob> _blobObject;
+        private String _comSha1;
+        private boolean mergeCommit;
+    }
+
+    /** A commit of a tree, with the serialized fields of later
+     *  versions. */
+    static class TreeCommit implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private String _time;
+        private String _message;
+        private String _parentSha1;
+        private String _parentSha2;
+        private String _treeSha1;
+        private String _comSha1;
+        private boolean mergeCommit;
+    }
+
+    /** A tree with the serialized fields of later versions. */
+    static class OldTree implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private TreeMap<String, String> _blobs = new TreeMap<String, String>();
+        private TreeMap<String, String> _trees = new TreeMap<String, String>();
+    }
+
+    /** A blob with the serialized fields of the first version. */
+    static class OldBlob implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private String _blobSha1;
+        private byte[] _content;
+        private String _contString;
+        private File _file;
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        _dir = _tmp.newFolder(".gitlet");
+        for (String name: new String[] {"blobs", "blobObject", "commits",
+                "staging", "branch"}) {
+            new File(_dir, name).mkdirs();
+        }
+    }
+
+    /** Returns the old id of the blob TEXT. */
+    private static String oldId(String text) {
+        return Utils.sha1("old " + text);
+    }
+
+    /** Returns the new id of the blob TEXT. */
+    private static String newId(String text) {
+        return Utils.sha1(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Returns the file of the object ID in the old store NAME. */
+    private File oldFile(String name, String id) {
+        if (_fanout) {
+            File shard = new File(_dir, name + "/"
+                    + id.substring(0, ObjectStore.FANOUT));
+            shard.mkdirs();
+            return new File(shard, id.substring(ObjectStore.FANOUT));
+        }
+        return new File(_dir, name + "/" + id);
+    }
+
+    /** Returns a blob of TEXT, written to the old blob stores if STORED. */
+    private OldBlob blob(String text, boolean stored) {
+        OldBlob blob = new OldBlob();
+        blob._blobSha1 = oldId(text);
+        blob._content = text.getBytes(StandardCharsets.UTF_8);
+        blob._contString = text;
+        blob._file = new File(text);
+        if (stored) {
+            Utils.writeContents(oldFile("blobs", oldId(text)),
+                    blob._content);
+            Utils.writeContents(oldFile("blobObject", oldId(text)),
+                    asOld(blob));
+        }
+        return blob;
+    }
+
+    /** Writes a commit with MESSAGE, PARENTS and FILES, alternately names
+     *  and blobs, and returns its id. */
+    private String commit(String message, String[] parents,
+                          Object... files) {
+        OldCommit commit = new OldCommit();
+        commit._time = "Thu Jan 01 00:00:00 1970 +0000";
+        commit._message = message;
+        commit._parentSha1 = parents.length > 0 ? parents[0] : null;
+        commit._parentSha2 = parents.length > 1 ? parents[1] : null;
+        commit.mergeCommit = parents.length > 1;
+        commit._blobObject = new TreeMap<String, OldBlob>();
+        for (int i = 0; i < files.length; i += 2) {
+            commit._blobObject.put((String) files[i], (OldBlob) files[i + 1]);
+        }
+        commit._comSha1 = Utils.sha1(message + String.join("", parents));
+        Utils.writeContents(oldFile("commits", commit._comSha1),
+                asOld(commit));
+        _commits.put(commit._comSha1, commit);
+        return commit._comSha1;
+    }
+
+    /** Returns OBJECT serialized as an old version would have, with each
+     *  class here named as the class it stands for. */
+    private static byte[] asOld(Serializable object) {
+        byte[] bytes = Utils.serialize(object);
+        String[][] names = {{"OldCommit", "Commit"}, {"OldBlob", "Blob"},
+            {"TreeCommit", "Commit"}, {"OldTree", "Tree"}};
+        for (String[] name: names) {
+            bytes = replace(bytes,
+                    utf(MigrationTest.class.getName() + "$" + name[0]),
+                    utf("gitlet." + name[1]));
+        }
+        return bytes;
+    }
+
+    /** Writes a tree of FILES and DIRS, each alternately names and ids,
+     *  to the old tree store and returns its id. */
+    private String tree(String[] files, String[] dirs) {
+        OldTree tree = new OldTree();
+        for (int i = 0; i < files.length; i += 2) {
+            tree._blobs.put(files[i], files[i + 1]);
+        }
+        for (int i = 0; i < dirs.length; i += 2) {
+            tree._trees.put(dirs[i], dirs[i + 1]);
+        }
+        String sha1 = Utils.sha1("tree " + tree._blobs + tree._trees);
+        Utils.writeContents(oldFile("trees", sha1), asOld(tree));
+        return sha1;
+    }
+
+    /** Writes a commit of the tree TREESHA1 with MESSAGE and PARENT, which
+     *  may be null, and returns its id. */
+    private String treeCommit(String message, String parent,
+                              String treeSha1) {
+        TreeCommit commit = new TreeCommit();
+        commit._time = "Thu Jan 01 00:00:00 1970 +0000";
+        commit._message = message;
+        commit._parentSha1 = parent;
+        commit._treeSha1 = treeSha1;
+        commit._comSha1 = Utils.sha1(message + treeSha1);
+        Utils.writeContents(oldFile("commits", commit._comSha1),
+                asOld(commit));
+        return commit._comSha1;
+    }
+
+    /** Returns NAME as written by DataOutput.writeUTF. */
+    private static byte[] utf(String name) {
+        byte[] chars = name.getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(chars.length >> 8);
+        out.write(chars.length & 0xff);
+        out.writeBytes(chars);
+        return out.toByteArray();
+    }
+
+    /** Returns BYTES with every FROM replaced by TO. */
+    private static byte[] replace(byte[] bytes, byte[] from, byte[] to) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int i = 0;
+        while (i < bytes.length) {
+            int j = 0;
+            while (j < from.length && i + j < bytes.length
+                    && bytes[i + j] == from[j]) {
+                j += 1;
+            }
+            if (j == from.length) {
+                out.writeBytes(to);
+                i += from.length;
+            } else {
+                out.write(bytes[i]);
+                i += 1;
+            }
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    public void commitsKeepTheirIdsAndGetTreesOfNewBlobIds() {
+        checkHistory();
+    }
+
+    @Test
+    public void fannedOutStoresAreImported() {
+        _fanout = true;
+        checkHistory();
+    }
+
+    /** Writes a history with a merge, imports it and checks every
+     *  commit against the one written. */
+    private void checkHistory() {
+        String init = commit("initial commit", new String[0]);
+        OldBlob a1 = blob("a1\n", true);
+        OldBlob b = blob("b\n", true);
+        String first = commit("first", new String[] {init}, "a.txt", a1,
+                "b.txt", b);
+        OldBlob a2 = blob("a2\n", true);
+        String second = commit("second", new String[] {first}, "a.txt", a2);
+        OldBlob c = blob("c\n", false);
+        String side = commit("side", new String[] {first}, "a.txt", a1,
+                "b.txt", b, "c.txt", c);
+        String merged = commit("merged", new String[] {second, side},
+                "a.txt", a2, "c.txt", c);
+        ObjectStore store = new ObjectStore(new File(_dir, "objects"));
+        List<Commit> commits = new Migration(_dir, store).commits();
+        assertEquals(_commits.size(), commits.size());
+        HashMap<String, Integer> position = new HashMap<String, Integer>();
+        for (Commit commit: commits) {
+            OldCommit old = _commits.get(commit.getSha1());
+            assertNotNull(old);
+            for (String parent: new String[] {commit.getParentSha1(),
+                    commit.getParentSha2()}) {
+                assertTrue(parent == null || position.containsKey(parent));
+            }
+            position.put(commit.getSha1(), position.size());
+            assertEquals(old._message, commit.getMessage());
+            assertEquals(old._time, commit.getTime());
+            assertEquals(old._parentSha1, commit.getParentSha1());
+            assertEquals(old._parentSha2, commit.getParentSha2());
+            TreeMap<String, String> expected = new TreeMap<String, String>();
+            for (Map.Entry<String, OldBlob> entry
+                    : old._blobObject.entrySet()) {
+                expected.put(entry.getKey(),
+                        newId(entry.getValue()._contString));
+            }
+            TreeMap<String, String> files =
+                    Tree.read(store, commit.getTreeSha1());
+            assertEquals(expected, files);
+            for (Map.Entry<String, OldBlob> entry
+                    : old._blobObject.entrySet()) {
+                assertArrayEquals(entry.getValue()._content,
+                        store.readContents(files.get(entry.getKey())));
+            }
+        }
+        assertEquals(Map.of("a.txt", newId("a2\n"), "c.txt", newId("c\n")),
+                Tree.read(store, commits.get(position.get(merged))
+                        .getTreeSha1()));
+    }
+
+    @Test
+    public void commitsOfTreesAreImported() {
+        _fanout = true;
+        new File(_dir, "trees").mkdirs();
+        blob("a\n", true);
+        blob("b\n", true);
+        String init = treeCommit("initial commit", null,
+                tree(new String[0], new String[0]));
+        String sub = tree(new String[] {"b.txt", oldId("b\n")},
+                new String[0]);
+        String root = tree(new String[] {"a.txt", oldId("a\n")},
+                new String[] {"dir", sub});
+        String first = treeCommit("first", init, root);
+        ObjectStore store = new ObjectStore(new File(_dir, "objects"));
+        Migration migration = new Migration(_dir, store);
+        List<Commit> commits = migration.commits();
+        assertEquals(2, commits.size());
+        assertEquals(init, commits.get(0).getSha1());
+        assertEquals(first, commits.get(1).getSha1());
+        assertEquals(init, commits.get(1).getParentSha1());
+        assertEquals("first", commits.get(1).getMessage());
+        assertEquals(Map.of(), Tree.read(store,
+                commits.get(0).getTreeSha1()));
+        assertEquals(Map.of("a.txt", newId("a\n"), "dir/b.txt", newId("b\n")),
+                Tree.read(store, commits.get(1).getTreeSha1()));
+        migration.clean();
+        assertFalse(new File(_dir, "trees").exists());
+    }
+
+    @Test
+    public void stagedBlobIdsAreMapped() {
+        String init = commit("initial commit", new String[0]);
+        OldBlob a = blob("a\n", true);
+        commit("first", new String[] {init}, "a.txt", a);
+        blob("d\n", true);
+        StagingArea old = new StagingArea();
+        old.addFileToStage("add", "d.txt", oldId("d\n"));
+        old.addFileToStage("remove", "a.txt", oldId("a\n"));
+        File stageFile = new File(_dir, "staging/stage");
+        Utils.writeContents(stageFile, Utils.serialize(old));
+        ObjectStore store = new ObjectStore(new File(_dir, "objects"));
+        Migration migration = new Migration(_dir, store);
+        migration.commits();
+        StagingArea stage = migration.stage(stageFile);
+        assertEquals(Map.of("d.txt", newId("d\n")), stage.getAddingStage());
+        assertEquals(Map.of("a.txt", newId("a\n")),
+                stage.getRemovingStage());
+        assertArrayEquals("d\n".getBytes(StandardCharsets.UTF_8),
+                store.readContents(newId("d\n")));
+    }
+
+    @Test
+    public void cleanDeletesTheOldStores() {
+        String init = commit("initial commit", new String[0]);
+        commit("first", new String[] {init}, "a.txt", blob("a\n", true));
+        ObjectStore store = new ObjectStore(new File(_dir, "objects"));
+        Migration migration = new Migration(_dir, store);
+        assertTrue(Migration.needed(_dir));
+        migration.commits();
+        migration.clean();
+        assertFalse(Migration.needed(_dir));
+        assertFalse(new File(_dir, "blobs").exists());
+        assertFalse(new File(_dir, "blobObject").exists());
+        assertTrue(store.contains(newId("a\n")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownCommitShapesAreRejected() {
+        Utils.writeContents(new File(_dir, "commits/" + oldId("x")),
+                Utils.serialize(new TreeMap<String, String>()));
+        new Migration(_dir, new ObjectStore(new File(_dir, "objects")))
+                .commits();
+    }
+}
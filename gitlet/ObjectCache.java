@@ -0,0 +1,112 @@
+package gitlet;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** Decoded objects kept in memory by id, so that one command decodes
+ *  each commit or tree at most once. Entries are weighed in bytes and
+ *  the least recently used ones are dropped once the total passes the
+ *  capacity. Counts hits and misses. Every method is synchronized, so
+ *  the cache may be used from Repo.parallel's threads. */
+public class ObjectCache {
+
+    /** bytes charged for each entry of a flattened tree. */
+    private static final int ENTRY_OVERHEAD = 64;
+
+    /** cached objects in access order, least recently used first. */
+    private LinkedHashMap<String, Object> _objects =
+            new LinkedHashMap<String, Object>(64, 0.75f, true);
+
+    /** weight of each cached object. */
+    private LinkedHashMap<String, Long> _weights =
+            new LinkedHashMap<String, Long>();
+
+    /** most bytes held at once. */
+    private long _capacity;
+
+    /** bytes currently held. */
+    private long _bytes;
+
+    /** lookups that found their object. */
+    private long _hits;
+
+    /** lookups that did not. */
+    private long _misses;
+
+    public ObjectCache(long capacity) {
+        _capacity = capacity;
+    }
+
+    /** Returns the cached object SHA1 if it is a TYPE, or null. */
+    public synchronized <T> T get(String sha1, Class<T> type) {
+        Object value = _objects.get(sha1);
+        if (type.isInstance(value)) {
+            _hits += 1;
+            return type.cast(value);
+        }
+        _misses += 1;
+        return null;
+    }
+
+    /** Caches VALUE as SHA1, charging WEIGHT bytes for it, and evicts
+     *  the least recently used objects until the cache fits again. An
+     *  object heavier than the whole cache is not kept. */
+    public synchronized void put(String sha1, Object value, long weight) {
+        remove(sha1);
+        if (weight > _capacity) {
+            return;
+        }
+        _objects.put(sha1, value);
+        _weights.put(sha1, weight);
+        _bytes += weight;
+        Iterator<String> eldest = _objects.keySet().iterator();
+        while (_bytes > _capacity && eldest.hasNext()) {
+            String victim = eldest.next();
+            eldest.remove();
+            _bytes -= _weights.remove(victim);
+        }
+    }
+
+    public synchronized void remove(String sha1) {
+        if (_objects.remove(sha1) != null) {
+            _bytes -= _weights.remove(sha1);
+        }
+    }
+
+    public synchronized void clear() {
+        _objects.clear();
+        _weights.clear();
+        _bytes = 0;
+    }
+
+    public synchronized long hits() {
+        return _hits;
+    }
+
+    public synchronized long misses() {
+        return _misses;
+    }
+
+    public synchronized long bytes() {
+        return _bytes;
+    }
+
+    /** Returns an estimate of the memory held by FILES, a flattened
+     *  tree. */
+    static long weight(Map<String, String> files) {
+        long total = 0;
+        for (Map.Entry<String, String> entry: files.entrySet()) {
+            total += ENTRY_OVERHEAD + 2L * entry.getKey().length()
+                    + 2L * entry.getValue().length();
+        }
+        return total;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("cache: %d hits, %d misses, %d objects,"
+                + " %d of %d bytes", _hits, _misses, _objects.size(),
+                _bytes, _capacity);
+    }
+}
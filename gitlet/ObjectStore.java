@@ -0,0 +1,754 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/** A directory of objects named by sha1, fanned out into subdirectories
+ *  named by the first two hex characters of the sha1 (like git).
+ *  Full ids resolve to a single path without listing anything.
+ *  Every object file is a header "TYPE SIZE CODEC\0" followed by SIZE
+ *  bytes of content, either stored as is or deflated (CODEC "store" or
+ *  "deflate"), and is only rewritten when its content is re-encoded in
+ *  a newer format (see replaceContents). The deflate level
+ *  is the core.compression setting; 0 stores everything uncompressed.
+ *  Objects may also live in pack files under the "pack" subdirectory,
+ *  which are consulted when there is no loose file for an id. A packed
+ *  blob may be stored as a delta against another blob, in which case
+ *  its header names the base: "TYPE SIZE CODEC BASE\0". */
+public class ObjectStore {
+
+    /** number of hex characters used for the fan-out directory. */
+    static final int FANOUT = 2;
+
+    /** number of hex characters in a full sha1. */
+    static final int UID_LENGTH = 40;
+
+    /** type of file contents. */
+    static final String BLOB = "blob";
+
+    /** type of directory listings. */
+    static final String TREE = "tree";
+
+    /** type of commits. */
+    static final String COMMIT = "commit";
+
+    /** codec of content kept as is. */
+    static final String STORE = "store";
+
+    /** codec of deflated content. */
+    static final String DEFLATE = "deflate";
+
+    /** longest header that will be looked for. */
+    private static final int MAX_HEADER = 128;
+
+    /** size of the buffers used to stream deflated content. */
+    private static final int BUFFER = 1 << 16;
+
+    /** directory holding the fan-out subdirectories. */
+    private File _dir;
+
+    /** packs in the pack subdirectory, or null before the first use. */
+    private List<Pack> _packs;
+
+    /** stamp of the pack directory when _packs was read. */
+    private String _packsStamp;
+
+    /** recently reconstructed delta results and bases, least recently
+     *  used first. */
+    private LinkedHashMap<String, byte[]> _deltaCache =
+            new LinkedHashMap<String, byte[]>(16, 0.75f, true);
+
+    /** total bytes held in _deltaCache. */
+    private long _deltaCacheBytes;
+
+    public ObjectStore(File dir) {
+        _dir = dir;
+    }
+
+    public File getDir() {
+        return _dir;
+    }
+
+    public File file(String sha1) {
+        return Utils.join(_dir, sha1.substring(0, FANOUT),
+                sha1.substring(FANOUT));
+    }
+
+    public boolean contains(String sha1) {
+        return sha1 != null && sha1.length() == UID_LENGTH
+                && (file(sha1).exists() || packFor(sha1) != null);
+    }
+
+    File packDir() {
+        return Utils.join(_dir, "pack");
+    }
+
+    synchronized List<Pack> packs() {
+        if (_packs == null) {
+            _packsStamp = FileStamp.of(packDir());
+            _packs = Pack.load(packDir());
+        }
+        return _packs;
+    }
+
+    /** Forgets the list of packs if packs have been added or removed
+     *  since it was read. */
+    public synchronized void refresh() {
+        if (_packs != null && !FileStamp.of(packDir()).equals(_packsStamp)) {
+            _packs = null;
+        }
+    }
+
+    /** Returns the pack holding SHA1, or null if none does. */
+    private Pack packFor(String sha1) {
+        for (Pack pack: packs()) {
+            if (pack.contains(sha1)) {
+                return pack;
+            }
+        }
+        return null;
+    }
+
+    /** Returns every sha1 in this store, loose or packed, in sorted
+     *  order. */
+    public List<String> ids() {
+        TreeSet<String> result = new TreeSet<String>(looseIds());
+        for (Pack pack: packs()) {
+            for (int i = 0; i < pack.size(); i += 1) {
+                result.add(pack.get(i));
+            }
+        }
+        return new ArrayList<String>(result);
+    }
+
+    /** Returns the sha1 of every loose object, in sorted order. */
+    public List<String> looseIds() {
+        List<String> result = new ArrayList<String>();
+        String[] shards = _dir.list();
+        if (shards == null) {
+            return result;
+        }
+        Arrays.sort(shards);
+        for (String shard: shards) {
+            List<String> names = Utils.plainFilenamesIn(
+                    Utils.join(_dir, shard));
+            if (shard.length() != FANOUT || names == null) {
+                continue;
+            }
+            for (String name: names) {
+                if (name.length() == UID_LENGTH - FANOUT) {
+                    result.add(shard + name);
+                }
+            }
+        }
+        return result;
+    }
+
+    public void writeContents(String type, String sha1, byte[] content) {
+        if (contains(sha1)) {
+            return;
+        }
+        File temp = tempFile(sha1);
+        Utils.writeContents(temp, entry(type, content.length, content, null));
+        install(temp, sha1);
+    }
+
+    /** Stores CONTENT as SHA1 even if SHA1 is already present, as when
+     *  an object is re-encoded. The new copy is loose, so it is read in
+     *  place of any packed one until the next repack replaces that. */
+    public void replaceContents(String type, String sha1, byte[] content) {
+        File temp = tempFile(sha1);
+        Utils.writeContents(temp, entry(type, content.length, content, null));
+        try {
+            Files.move(temp.toPath(), file(sha1).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the stored form of BODY, the content of an object of TYPE
+     *  and SIZE bytes, or a delta of it against BASE if BASE is not null:
+     *  a header followed by BODY, deflated if that makes it smaller. */
+    static byte[] entry(String type, long size, byte[] body, String base) {
+        byte[] stored = body;
+        String codec = STORE;
+        int level = compression();
+        if (level != 0) {
+            Deflater deflater = new Deflater(level);
+            deflater.setInput(body);
+            deflater.finish();
+            ByteArrayOutputStream deflated = new ByteArrayOutputStream();
+            byte[] buf = new byte[BUFFER];
+            while (!deflater.finished() && deflated.size() < body.length) {
+                deflated.write(buf, 0, deflater.deflate(buf));
+            }
+            deflater.end();
+            if (deflated.size() < body.length) {
+                stored = deflated.toByteArray();
+                codec = DEFLATE;
+            }
+        }
+        String header = type + " " + size + " " + codec
+                + (base == null ? "" : " " + base) + "\0";
+        byte[] head = header.getBytes(StandardCharsets.UTF_8);
+        byte[] result = Arrays.copyOf(head, head.length + stored.length);
+        System.arraycopy(stored, 0, result, head.length, stored.length);
+        return result;
+    }
+
+    /** Stores the content of SOURCE as the blob SHA1. The content is
+     *  streamed through a Deflater, or copied with FileChannel.transferTo
+     *  when it does not get smaller, so it is never held in memory. */
+    public void writeFile(String sha1, File source) {
+        if (contains(sha1)) {
+            return;
+        }
+        File temp = tempFile(sha1);
+        long size = source.length();
+        int level = compression();
+        if (level == 0 || !writeDeflated(source, size, level, temp)) {
+            try (FileChannel in = FileChannel.open(source.toPath(),
+                    StandardOpenOption.READ);
+                 FileChannel out = FileChannel.open(temp.toPath(),
+                         StandardOpenOption.CREATE,
+                         StandardOpenOption.WRITE,
+                         StandardOpenOption.TRUNCATE_EXISTING)) {
+                out.write(ByteBuffer.wrap(header(BLOB, size, STORE)
+                        .getBytes(StandardCharsets.UTF_8)));
+                transfer(in, 0, size, out);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        install(temp, sha1);
+    }
+
+    /** Writes SOURCE, of SIZE bytes, deflated at LEVEL into TEMP.
+     *  Returns false, leaving TEMP to be overwritten, as soon as the
+     *  deflated content is no smaller than SIZE. */
+    private boolean writeDeflated(File source, long size, int level,
+                                  File temp) {
+        byte[] header = header(BLOB, size, DEFLATE)
+                .getBytes(StandardCharsets.UTF_8);
+        Deflater deflater = new Deflater(level);
+        try (InputStream in = new FileInputStream(source);
+             FileOutputStream out = new FileOutputStream(temp);
+             DeflaterOutputStream zip = new DeflaterOutputStream(
+                     out, deflater, BUFFER)) {
+            out.write(header);
+            byte[] buf = new byte[BUFFER];
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                zip.write(buf, 0, n);
+                if (deflater.getBytesWritten() >= size) {
+                    return false;
+                }
+            }
+            zip.finish();
+            return deflater.getBytesWritten() < size;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static int compression() {
+        int level = Config.getInt("core.compression",
+                Deflater.DEFAULT_COMPRESSION);
+        if (level < Deflater.DEFAULT_COMPRESSION
+                || level > Deflater.BEST_COMPRESSION) {
+            return Deflater.DEFAULT_COMPRESSION;
+        }
+        return level;
+    }
+
+    public byte[] readContents(String sha1) {
+        try (InputStream in = open(sha1)) {
+            return in.readAllBytes();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns a stream over the content of SHA1, positioned just past
+     *  its header and inflating deflated content as it is read. */
+    public InputStream open(String sha1) {
+        File loose = file(sha1);
+        try {
+            InputStream in;
+            if (loose.exists()) {
+                in = new BufferedInputStream(
+                        new FileInputStream(loose), BUFFER);
+            } else {
+                Pack pack = packFor(sha1);
+                if (pack == null) {
+                    throw new IllegalArgumentException(
+                            "no object " + sha1);
+                }
+                in = pack.open(pack.find(sha1));
+            }
+            StringBuilder header = new StringBuilder();
+            for (int b = in.read(); b != 0; b = in.read()) {
+                if (b < 0 || header.length() >= MAX_HEADER) {
+                    in.close();
+                    throw new IllegalArgumentException(
+                            "corrupt object header");
+                }
+                header.append((char) b);
+            }
+            if (DEFLATE.equals(codec(header.toString()))) {
+                in = new InflaterInputStream(in, new Inflater(), BUFFER);
+            }
+            String base = deltaBase(header.toString());
+            if (base != null) {
+                byte[] delta = in.readAllBytes();
+                in.close();
+                return new ByteArrayInputStream(undelta(sha1, base, delta));
+            }
+            return in;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the content of SHA1, which is DELTA applied to the content
+     *  of BASE. Results are kept in a cache of at most pack.deltaCacheSize
+     *  bytes, so walking a delta chain does not rebuild its bases. */
+    private synchronized byte[] undelta(String sha1, String base,
+                                        byte[] delta) {
+        byte[] result = _deltaCache.get(sha1);
+        if (result != null) {
+            return result;
+        }
+        byte[] baseContent = _deltaCache.get(base);
+        if (baseContent == null) {
+            baseContent = readContents(base);
+            cacheDelta(base, baseContent);
+        }
+        result = Delta.apply(baseContent, delta);
+        cacheDelta(sha1, result);
+        return result;
+    }
+
+    private synchronized void cacheDelta(String sha1, byte[] content) {
+        long limit = Config.getLong("pack.deltaCacheSize", 1L << 26);
+        if (content.length > limit || _deltaCache.containsKey(sha1)) {
+            return;
+        }
+        _deltaCache.put(sha1, content);
+        _deltaCacheBytes += content.length;
+        Iterator<byte[]> eldest = _deltaCache.values().iterator();
+        while (_deltaCacheBytes > limit && eldest.hasNext()) {
+            _deltaCacheBytes -= eldest.next().length;
+            eldest.remove();
+        }
+    }
+
+    /** Writes the content of SHA1 to DEST. Stored content goes from the
+     *  object file to DEST with FileChannel.transferTo, without passing
+     *  through the heap; deflated content is inflated a buffer at a
+     *  time. */
+    public void copyTo(String sha1, File dest) {
+        try (FileChannel out = FileChannel.open(dest.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            File loose = file(sha1);
+            if (loose.exists()) {
+                try (FileChannel in = FileChannel.open(loose.toPath(),
+                        StandardOpenOption.READ)) {
+                    ByteBuffer head = readHeader(in);
+                    long start = headerLength(head);
+                    String header = headerString(head);
+                    if (STORE.equals(codec(header))
+                            && deltaBase(header) == null) {
+                        transfer(in, start, in.size() - start, out);
+                        return;
+                    }
+                }
+            } else {
+                Pack pack = packFor(sha1);
+                int i = pack == null ? -1 : pack.find(sha1);
+                ByteBuffer head = i < 0 ? null : pack.entry(i);
+                String header = head == null ? null : headerString(head);
+                if (header != null && STORE.equals(codec(header))
+                        && deltaBase(header) == null) {
+                    long start = headerLength(head);
+                    pack.transferTo(i, start, pack.length(i) - start, out);
+                    return;
+                }
+            }
+            try (InputStream inflated = open(sha1)) {
+                byte[] buf = new byte[BUFFER];
+                int n;
+                while ((n = inflated.read(buf)) > 0) {
+                    out.write(ByteBuffer.wrap(buf, 0, n));
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the type named in the header of SHA1. */
+    public String type(String sha1) {
+        return storedHeader(sha1).split(" ")[0];
+    }
+
+    /** Returns the size of the content of SHA1. */
+    public long size(String sha1) {
+        return Long.parseLong(storedHeader(sha1).split(" ")[1]);
+    }
+
+    private String storedHeader(String sha1) {
+        File loose = file(sha1);
+        if (loose.exists()) {
+            try (FileChannel in = FileChannel.open(loose.toPath(),
+                    StandardOpenOption.READ)) {
+                return headerString(readHeader(in));
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        Pack pack = packFor(sha1);
+        return headerString(pack.entry(pack.find(sha1)));
+    }
+
+    /** Appends the stored bytes of SHA1, header included, to OUT. */
+    void copyStored(String sha1, FileChannel out) throws IOException {
+        File loose = file(sha1);
+        if (loose.exists()) {
+            try (FileChannel in = FileChannel.open(loose.toPath(),
+                    StandardOpenOption.READ)) {
+                transfer(in, 0, in.size(), out);
+            }
+        } else {
+            Pack pack = packFor(sha1);
+            int i = pack.find(sha1);
+            pack.transferTo(i, 0, pack.length(i), out);
+        }
+    }
+
+    /** Returns the number of stored bytes of SHA1, header included. */
+    long storedSize(String sha1) {
+        File loose = file(sha1);
+        if (loose.exists()) {
+            return loose.length();
+        }
+        Pack pack = packFor(sha1);
+        return pack.length(pack.find(sha1));
+    }
+
+    /** Moves every object into packs of at most pack.maxSize bytes and
+     *  removes the loose files and old packs they came from. Objects
+     *  too big for a pack stay loose, and are written out loose first if
+     *  they were packed. Blobs are stored as deltas where that saves
+     *  space; see deltify. */
+    public void repack() {
+        repack(Config.getLong("pack.maxSize", 1L << 30));
+    }
+
+    /** Repacks as repack does, into packs of at most LIMIT bytes. */
+    void repack(long limit) {
+        List<Pack> oldPacks = packs();
+        List<String> loose = looseIds();
+        HashMap<String, byte[]> entries = deltify();
+        List<String> batch = new ArrayList<String>();
+        List<File> written = new ArrayList<File>();
+        HashSet<String> packed = new HashSet<String>();
+        long batchSize = 0;
+        for (String sha1: ids()) {
+            if (!entries.containsKey(sha1)
+                    && deltaBase(storedHeader(sha1)) != null) {
+                entries.put(sha1, entry(type(sha1), size(sha1),
+                        readContents(sha1), null));
+            }
+            long size = entries.containsKey(sha1)
+                    ? entries.get(sha1).length : storedSize(sha1);
+            if (size >= limit) {
+                if (!file(sha1).exists()) {
+                    unpack(sha1);
+                }
+                continue;
+            }
+            if (batchSize + size > limit) {
+                written.add(Pack.write(packDir(), batch, this, entries)
+                        .getFile());
+                batch = new ArrayList<String>();
+                batchSize = 0;
+            }
+            batch.add(sha1);
+            packed.add(sha1);
+            batchSize += size;
+        }
+        if (!batch.isEmpty()) {
+            written.add(Pack.write(packDir(), batch, this, entries)
+                    .getFile());
+        }
+        for (Pack pack: oldPacks) {
+            if (!written.contains(pack.getFile())) {
+                pack.delete();
+            }
+        }
+        for (String sha1: loose) {
+            if (packed.contains(sha1)) {
+                File file = file(sha1);
+                file.delete();
+                file.getParentFile().delete();
+            }
+        }
+        _packs = null;
+    }
+
+    /** Writes the packed object SHA1 out as a loose file, copying its
+     *  stored bytes unless it is a delta, which is written whole so that
+     *  no loose object depends on a base. */
+    private void unpack(String sha1) {
+        File temp = tempFile(sha1);
+        if (deltaBase(storedHeader(sha1)) != null) {
+            Utils.writeContents(temp, entry(type(sha1), size(sha1),
+                    readContents(sha1), null));
+        } else {
+            try (FileChannel out = FileChannel.open(temp.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                copyStored(sha1, out);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        install(temp, sha1);
+    }
+
+    /** Returns the stored form of every blob worth keeping as a delta.
+     *  Blobs are grouped by file name, as successive versions of a file
+     *  share a name, and sorted by size. Each blob of at most
+     *  pack.deltaLimit bytes is compared with the pack.window blobs before
+     *  it and stored as a delta against the one giving the smallest delta,
+     *  if that delta is under half the blob's size. Chains of deltas are
+     *  at most pack.depth long. */
+    HashMap<String, byte[]> deltify() {
+        int window = Config.getInt("pack.window", 10);
+        int maxDepth = Config.getInt("pack.depth", 10);
+        long deltaLimit = Config.getLong("pack.deltaLimit", 1L << 23);
+        TreeMap<String, List<String>> byName =
+                new TreeMap<String, List<String>>();
+        HashSet<String> seen = new HashSet<String>();
+        for (String sha1: ids()) {
+            if (!TREE.equals(type(sha1))) {
+                continue;
+            }
+            Tree tree = Tree.load(this, sha1);
+            for (Map.Entry<String, String> e: tree.getBlobs().entrySet()) {
+                if (seen.add(e.getValue()) && size(e.getValue()) > 0
+                        && size(e.getValue()) <= deltaLimit) {
+                    if (!byName.containsKey(e.getKey())) {
+                        byName.put(e.getKey(), new ArrayList<String>());
+                    }
+                    byName.get(e.getKey()).add(e.getValue());
+                }
+            }
+        }
+        HashMap<String, byte[]> result = new HashMap<String, byte[]>();
+        HashMap<String, Integer> depth = new HashMap<String, Integer>();
+        for (List<String> versions: byName.values()) {
+            versions.sort((a, b) -> Long.compare(size(b), size(a)));
+            LinkedList<String> recent = new LinkedList<String>();
+            HashMap<String, byte[]> contents = new HashMap<String, byte[]>();
+            for (String sha1: versions) {
+                byte[] content = readContents(sha1);
+                byte[] best = null;
+                String bestBase = null;
+                for (String base: recent) {
+                    if (depth.get(base) >= maxDepth) {
+                        continue;
+                    }
+                    byte[] delta = Delta.create(contents.get(base), content);
+                    if (delta.length < content.length / 2
+                            && (best == null || delta.length < best.length)) {
+                        best = delta;
+                        bestBase = base;
+                    }
+                }
+                if (best == null) {
+                    depth.put(sha1, 0);
+                } else {
+                    depth.put(sha1, depth.get(bestBase) + 1);
+                    result.put(sha1, entry(BLOB, content.length, best,
+                            bestBase));
+                }
+                recent.addFirst(sha1);
+                contents.put(sha1, content);
+                if (recent.size() > window) {
+                    contents.remove(recent.removeLast());
+                }
+            }
+        }
+        return result;
+    }
+
+    static String header(String type, long size, String codec) {
+        return type + " " + size + " " + codec + "\0";
+    }
+
+    /** Returns the codec named in HEADER. Headers written before
+     *  compression existed have none and are stored. */
+    static String codec(String header) {
+        String[] fields = header.split(" ");
+        return fields.length > 2 ? fields[2] : STORE;
+    }
+
+    /** Returns the base named in HEADER if it is a delta, or null. */
+    static String deltaBase(String header) {
+        String[] fields = header.split(" ");
+        return fields.length > 3 ? fields[3] : null;
+    }
+
+    private static ByteBuffer readHeader(FileChannel in) throws IOException {
+        ByteBuffer head = ByteBuffer.allocate(MAX_HEADER);
+        in.read(head, 0);
+        head.flip();
+        return head;
+    }
+
+    private static String headerString(ByteBuffer head) {
+        byte[] bytes = new byte[headerLength(head) - 1];
+        for (int i = 0; i < bytes.length; i += 1) {
+            bytes[i] = head.get(i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Returns the number of bytes in the header at the start of BUF,
+     *  including its terminating NUL. */
+    static int headerLength(ByteBuffer buf) {
+        int limit = Math.min(buf.limit(), MAX_HEADER);
+        for (int i = 0; i < limit; i += 1) {
+            if (buf.get(i) == 0) {
+                return i + 1;
+            }
+        }
+        throw new IllegalArgumentException("corrupt object header");
+    }
+
+    static void transfer(FileChannel in, long start, long size,
+                         FileChannel out) throws IOException {
+        long pos = 0;
+        while (pos < size) {
+            pos += in.transferTo(start + pos,
+                    Math.min(Blob.CHUNK, size - pos), out);
+        }
+    }
+
+    private File tempFile(String sha1) {
+        File dest = file(sha1);
+        dest.getParentFile().mkdirs();
+        return new File(dest.getPath() + ".tmp");
+    }
+
+    private void install(File temp, String sha1) {
+        try {
+            Files.move(temp.toPath(), file(sha1).toPath(),
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns true if BYTES starts like a Java serialization stream, as
+     *  commits and stages written by older versions do. */
+    static boolean isSerialized(byte[] bytes) {
+        return bytes.length >= 2 && (bytes[0] & 0xff) == 0xac
+                && (bytes[1] & 0xff) == 0xed;
+    }
+
+    /** Returns the 20 raw bytes of the hex SHA1. */
+    static byte[] rawId(String sha1) {
+        byte[] result = new byte[UID_LENGTH / 2];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = (byte) (Character.digit(sha1.charAt(2 * i), 16) << 4
+                    | Character.digit(sha1.charAt(2 * i + 1), 16));
+        }
+        return result;
+    }
+
+    /** Returns the hex form of the 20 raw id bytes at OFFSET in BUF. */
+    static String hexId(ByteBuffer buf, int offset) {
+        StringBuilder result = new StringBuilder(UID_LENGTH);
+        for (int i = 0; i < UID_LENGTH / 2; i += 1) {
+            int b = buf.get(offset + i) & 0xff;
+            result.append(Character.forDigit(b >> 4, 16));
+            result.append(Character.forDigit(b & 0xf, 16));
+        }
+        return result.toString();
+    }
+
+    static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7fL) != 0) {
+            out.write((int) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    /** Reads a varint from BYTES at POS[0], advancing POS[0] past it. */
+    static long readVarint(byte[] bytes, int[] pos) {
+        long result = 0;
+        int shift = 0;
+        while (true) {
+            int b = bytes[pos[0]] & 0xff;
+            pos[0] += 1;
+            result |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+            shift += 7;
+        }
+    }
+
+    /** Writes STR to OUT as a varint length and its UTF-8 bytes. */
+    static void writeString(ByteArrayOutputStream out, String str) {
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    /** Reads a string written by writeString from BYTES at POS[0],
+     *  advancing POS[0] past it. */
+    static String readString(byte[] bytes, int[] pos) {
+        int length = (int) readVarint(bytes, pos);
+        String result = new String(bytes, pos[0], length,
+                StandardCharsets.UTF_8);
+        pos[0] += length;
+        return result;
+    }
+}
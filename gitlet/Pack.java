@@ -0,0 +1,276 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/** Many objects in one file. A pack "pack-NAME.pack" holds a magic
+ *  number, a version and an object count followed by the objects, each
+ *  exactly as it would be stored as a loose object (header and content).
+ *  Its index "pack-NAME.idx" holds a magic number, a version, a 256-entry
+ *  fanout table, the sorted raw 20-byte ids, and then the offset and
+ *  length of each object in the pack as longs. Both files are read
+ *  through memory maps. */
+public class Pack {
+
+    /** magic number at the start of a pack, "PACK". */
+    private static final int PACK_MAGIC = 0x5041434b;
+
+    /** magic number at the start of a pack index, "PIDX". */
+    private static final int IDX_MAGIC = 0x50494458;
+
+    /** version of the pack and index layouts. */
+    private static final int VERSION = 1;
+
+    /** bytes before the first object of a pack. */
+    private static final int PACK_HEADER = 12;
+
+    /** bytes before the first id of an index. */
+    private static final int IDX_HEADER = 8 + 256 * 4;
+
+    /** number of raw bytes in an id. */
+    private static final int ID_BYTES = ObjectStore.UID_LENGTH / 2;
+
+    /** the pack file. */
+    private File _packFile;
+
+    /** mapped pack file. */
+    private ByteBuffer _pack;
+
+    /** mapped index file. */
+    private ByteBuffer _idx;
+
+    /** number of objects in the pack. */
+    private int _size;
+
+    public Pack(File packFile) {
+        _packFile = packFile;
+        _pack = map(packFile);
+        _idx = map(idxFile(packFile));
+        if (_pack.getInt(0) != PACK_MAGIC
+                || _idx.getInt(0) != IDX_MAGIC
+                || _idx.getInt(4) != VERSION) {
+            throw new IllegalArgumentException("corrupt pack "
+                    + packFile.getName());
+        }
+        _size = _idx.getInt(8 + 255 * 4);
+    }
+
+    public File getFile() {
+        return _packFile;
+    }
+
+    public int size() {
+        return _size;
+    }
+
+    /** Returns the id of the I-th object in sorted order. */
+    public String get(int i) {
+        return ObjectStore.hexId(_idx, IDX_HEADER + i * ID_BYTES);
+    }
+
+    public boolean contains(String sha1) {
+        return find(sha1) >= 0;
+    }
+
+    /** Returns the position of SHA1 in the index, or -1. */
+    public int find(String sha1) {
+        if (sha1 == null || sha1.length() != ObjectStore.UID_LENGTH) {
+            return -1;
+        }
+        byte[] raw = ObjectStore.rawId(sha1);
+        int first = raw[0] & 0xff;
+        int lo = first == 0 ? 0 : _idx.getInt(8 + (first - 1) * 4);
+        int hi = _idx.getInt(8 + first * 4);
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = compare(mid, raw);
+            if (cmp == 0) {
+                return mid;
+            } else if (cmp < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return -1;
+    }
+
+    private int compare(int i, byte[] raw) {
+        int offset = IDX_HEADER + i * ID_BYTES;
+        for (int k = 0; k < ID_BYTES; k += 1) {
+            int cmp = (_idx.get(offset + k) & 0xff) - (raw[k] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+    public long offset(int i) {
+        return _idx.getLong(IDX_HEADER + _size * ID_BYTES + i * 8);
+    }
+
+    public long length(int i) {
+        return _idx.getLong(IDX_HEADER + _size * (ID_BYTES + 8) + i * 8);
+    }
+
+    /** Returns the stored bytes (header and content) of object I. */
+    public ByteBuffer entry(int i) {
+        ByteBuffer view = _pack.duplicate();
+        view.limit((int) (offset(i) + length(i)));
+        view.position((int) offset(i));
+        return view.slice();
+    }
+
+    /** Returns a stream over the stored bytes of object I. */
+    public InputStream open(int i) {
+        return new BufferInputStream(entry(i));
+    }
+
+    /** Copies SIZE bytes starting START bytes into object I to OUT. */
+    public void transferTo(int i, long start, long size, FileChannel out)
+            throws IOException {
+        try (FileChannel in = FileChannel.open(_packFile.toPath(),
+                StandardOpenOption.READ)) {
+            ObjectStore.transfer(in, offset(i) + start, size, out);
+        }
+    }
+
+    /** Writes the objects IDS, in sorted order, into a new pack in DIR.
+     *  An object's stored bytes are taken from ENTRIES if it is there and
+     *  copied from STORE otherwise. Returns the pack. */
+    static Pack write(File dir, List<String> ids, ObjectStore store,
+                      Map<String, byte[]> entries) {
+        dir.mkdirs();
+        String name = Utils.sha1(String.join("", ids));
+        File packFile = Utils.join(dir, "pack-" + name + ".pack");
+        File temp = Utils.join(dir, "pack-" + name + ".tmp");
+        long[] offsets = new long[ids.size()];
+        long[] lengths = new long[ids.size()];
+        try (FileChannel out = FileChannel.open(temp.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(PACK_HEADER);
+            header.putInt(PACK_MAGIC).putInt(VERSION).putInt(ids.size());
+            header.flip();
+            out.write(header);
+            for (int i = 0; i < ids.size(); i += 1) {
+                offsets[i] = out.position();
+                if (entries.containsKey(ids.get(i))) {
+                    out.write(ByteBuffer.wrap(entries.get(ids.get(i))));
+                } else {
+                    store.copyStored(ids.get(i), out);
+                }
+                lengths[i] = out.position() - offsets[i];
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        ByteBuffer idx = ByteBuffer.allocate(
+                IDX_HEADER + ids.size() * (ID_BYTES + 16));
+        idx.putInt(IDX_MAGIC).putInt(VERSION);
+        int[] fanout = new int[256];
+        for (String sha1: ids) {
+            fanout[Integer.parseInt(sha1.substring(0, 2), 16)] += 1;
+        }
+        int total = 0;
+        for (int b = 0; b < 256; b += 1) {
+            total += fanout[b];
+            idx.putInt(total);
+        }
+        for (String sha1: ids) {
+            idx.put(ObjectStore.rawId(sha1));
+        }
+        for (long offset: offsets) {
+            idx.putLong(offset);
+        }
+        for (long length: lengths) {
+            idx.putLong(length);
+        }
+        Utils.writeContents(idxFile(packFile), idx.array());
+        try {
+            Files.move(temp.toPath(), packFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return new Pack(packFile);
+    }
+
+    /** Returns the packs in DIR. */
+    static List<Pack> load(File dir) {
+        List<Pack> result = new ArrayList<Pack>();
+        List<String> names = Utils.plainFilenamesIn(dir);
+        if (names == null) {
+            return result;
+        }
+        for (String name: names) {
+            if (name.endsWith(".pack")
+                    && idxFile(Utils.join(dir, name)).exists()) {
+                result.add(new Pack(Utils.join(dir, name)));
+            }
+        }
+        return result;
+    }
+
+    /** Deletes this pack and its index. */
+    void delete() {
+        _pack = null;
+        _idx = null;
+        idxFile(_packFile).delete();
+        _packFile.delete();
+    }
+
+    static File idxFile(File packFile) {
+        String name = packFile.getName();
+        return Utils.join(packFile.getParentFile(),
+                name.substring(0, name.length() - ".pack".length())
+                        + ".idx");
+    }
+
+    private static ByteBuffer map(File file) {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            return channel.map(FileChannel.MapMode.READ_ONLY,
+                    0, channel.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** An InputStream over the remaining bytes of a ByteBuffer. */
+    private static class BufferInputStream extends InputStream {
+        /** the bytes still to be read. */
+        private ByteBuffer _buf;
+
+        BufferInputStream(ByteBuffer buf) {
+            _buf = buf;
+        }
+
+        @Override
+        public int read() {
+            return _buf.hasRemaining() ? _buf.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (!_buf.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, _buf.remaining());
+            _buf.get(b, off, n);
+            return n;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package gitlet;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/** Tests of packs, their .idx fanout tables, and repacking a store. */
+public class PackTest {
+
+    @Rule
+    public TemporaryFolder _tmp = new TemporaryFolder();
+
+    /** Stores the blobs "blob 0" ... "blob N-1" loose in STORE and
+     *  returns the ids of all its objects, in sorted order. */
+    private static List<String> blobs(ObjectStore store, int n) {
+        for (int i = 0; i < n; i += 1) {
+            byte[] content = content(i);
+            store.writeContents(ObjectStore.BLOB, Utils.sha1(content),
+                    content);
+        }
+        return store.looseIds();
+    }
+
+    private static byte[] content(int i) {
+        return ("blob " + i).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Returns a pack of every object loose in a new store of N blobs. */
+    private Pack pack(int n) throws IOException {
+        ObjectStore store = new ObjectStore(_tmp.newFolder());
+        return Pack.write(store.packDir(), blobs(store, n), store,
+                new HashMap<String, byte[]>());
+    }
+
+    @Test
+    public void fanoutCountsTheIdsUpToEachFirstByte() throws IOException {
+        Pack pack = pack(1000);
+        ByteBuffer idx = ByteBuffer.wrap(
+                Utils.readContents(Pack.idxFile(pack.getFile())));
+        int count = 0;
+        for (int b = 0; b < 256; b += 1) {
+            while (count < pack.size()
+                    && Integer.parseInt(pack.get(count).substring(0, 2), 16)
+                    <= b) {
+                count += 1;
+            }
+            assertEquals("fanout[" + b + "]", count, idx.getInt(8 + b * 4));
+        }
+        assertEquals(1000, count);
+    }
+
+    @Test
+    public void findsEveryIdInSortedOrder() throws IOException {
+        Pack pack = pack(1000);
+        for (int i = 0; i < pack.size(); i += 1) {
+            assertEquals(i, pack.find(pack.get(i)));
+            if (i > 0) {
+                assertTrue(pack.get(i - 1).compareTo(pack.get(i)) < 0);
+            }
+        }
+    }
+
+    @Test
+    public void findsNoMissingId() throws IOException {
+        Pack pack = pack(100);
+        for (int i = 0; i < pack.size(); i += 1) {
+            String sha1 = pack.get(i);
+            char last = sha1.charAt(sha1.length() - 1);
+            String other = sha1.substring(0, sha1.length() - 1)
+                    + (last == '0' ? '1' : '0');
+            if (!pack.contains(other)) {
+                assertEquals(-1, pack.find(other));
+            }
+        }
+        assertEquals(-1, pack.find("0".repeat(40)));
+        assertEquals(-1, pack.find("f".repeat(40)));
+        assertEquals(-1, pack.find(null));
+        assertEquals(-1, pack.find("abc"));
+    }
+
+    @Test
+    public void emptyPackFindsNothing() throws IOException {
+        Pack pack = pack(0);
+        assertEquals(0, pack.size());
+        assertEquals(-1, pack.find(Utils.sha1(content(0))));
+    }
+
+    @Test
+    public void entriesAreTheStoredLooseObjects() throws IOException {
+        ObjectStore store = new ObjectStore(_tmp.newFolder());
+        List<String> ids = blobs(store, 300);
+        HashMap<String, byte[]> loose = new HashMap<String, byte[]>();
+        for (String sha1: ids) {
+            loose.put(sha1, Utils.readContents(store.file(sha1)));
+        }
+        Pack pack = Pack.write(store.packDir(), ids, store,
+                new HashMap<String, byte[]>());
+        for (int i = 0; i < pack.size(); i += 1) {
+            ByteBuffer entry = pack.entry(i);
+            byte[] bytes = new byte[entry.remaining()];
+            entry.get(bytes);
+            assertArrayEquals(loose.get(pack.get(i)), bytes);
+            assertEquals(bytes.length, pack.length(i));
+        }
+    }
+
+    @Test
+    public void repackedObjectsReadBack() throws IOException {
+        ObjectStore store = new ObjectStore(_tmp.newFolder());
+        List<String> ids = blobs(store, 500);
+        store.repack();
+        assertTrue(store.looseIds().isEmpty());
+        assertEquals(1, store.packs().size());
+        assertEquals(ids, store.ids());
+        for (int i = 0; i < 500; i += 1) {
+            String sha1 = Utils.sha1(content(i));
+            assertTrue(store.contains(sha1));
+            assertArrayEquals(content(i), store.readContents(sha1));
+            assertEquals(ObjectStore.BLOB, store.type(sha1));
+        }
+    }
+
+    @Test
+    public void repackingAgainKeepsEveryObject() throws IOException {
+        ObjectStore store = new ObjectStore(_tmp.newFolder());
+        blobs(store, 50);
+        store.repack();
+        byte[] extra = "one more".getBytes(StandardCharsets.UTF_8);
+        store.writeContents(ObjectStore.BLOB, Utils.sha1(extra), extra);
+        store.repack();
+        assertEquals(1, store.packs().size());
+        assertEquals(51, store.ids().size());
+        assertArrayEquals(extra, store.readContents(Utils.sha1(extra)));
+        assertArrayEquals(content(7),
+                store.readContents(Utils.sha1(content(7))));
+    }
+
+    @Test
+    public void objectsTooBigForANewPackAreWrittenLoose() throws IOException {
+        ObjectStore store = new ObjectStore(_tmp.newFolder());
+        blobs(store, 20);
+        byte[] big = new byte[5000];
+        new Random(7).nextBytes(big);
+        String bigId = Utils.sha1(big);
+        store.writeContents(ObjectStore.BLOB, bigId, big);
+        store.repack();
+        assertTrue(store.looseIds().isEmpty());
+        store.repack(1000);
+        assertEquals(List.of(bigId), store.looseIds());
+        assertEquals(1, store.packs().size());
+        assertArrayEquals(big, store.readContents(bigId));
+        assertEquals(21, store.ids().size());
+        store.repack(1);
+        assertEquals(21, store.looseIds().size());
+        assertTrue(store.packs().isEmpty());
+        for (int i = 0; i < 20; i += 1) {
+            assertArrayEquals(content(i),
+                    store.readContents(Utils.sha1(content(i))));
+        }
+    }
+
+    @Test
+    public void packedDeltasTooBigForANewPackAreWrittenWhole()
+            throws IOException {
+        ObjectStore store = new ObjectStore(_tmp.newFolder());
+        Random random = new Random(7);
+        byte[] base = new byte[20000];
+        random.nextBytes(base);
+        byte[] edited = Arrays.copyOf(base, base.length + 100);
+        edited[10] += 1;
+        for (byte[] content: new byte[][] {base, edited}) {
+            store.writeContents(ObjectStore.BLOB, Utils.sha1(content),
+                    content);
+            Tree.write(store, Map.of("file", Utils.sha1(content)));
+        }
+        store.repack();
+        assertTrue(store.storedSize(Utils.sha1(base)) < 1000);
+        store.repack(1);
+        assertTrue(store.packs().isEmpty());
+        assertTrue(store.storedSize(Utils.sha1(base)) > base.length);
+        assertArrayEquals(base, store.readContents(Utils.sha1(base)));
+        assertArrayEquals(edited, store.readContents(Utils.sha1(edited)));
+    }
+}
@@ -2,11 +2,21 @@ package gitlet;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Set;
+import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
 import java.util.List;
+import java.util.Map;
 import java.util.Collections;
 
 
@@ -17,14 +27,8 @@ public class Repo {
     /** master folder. */
     private static File _gitletFold = Utils.join(WORKDIRECT, ".gitlet");
 
-    /** name: sha1, content: blob's content, byte[]. */
-    private static File _blobContent = Utils.join(_gitletFold, "blobs");
-
-    /** name: sha1, content: blob Object. */
-    private static File _blobObject = Utils.join(_gitletFold, "blobObject");
-
-    /** name: sha1 of commit, inside: commit object. */
-    private static File _commitFile = Utils.join(_gitletFold, "commits");
+    /** name: sha1, content: typed blob, tree or commit object. */
+    private static File _objectFile = Utils.join(_gitletFold, "objects");
 
     /** staging area. */
     private static File _stagingArea = Utils.join(_gitletFold, "staging");
@@ -44,64 +48,143 @@ public class Repo {
     /** name of the current branch. */
     private static File _currBranchF = Utils.join(_branchFile, "currBranch");
 
-    /** file for difference. */
-    private static File _diff = Utils.join(_gitletFold, "diff");
+    /** blobs, trees and commits, fanned out by sha1. */
+    private static ObjectStore _objects = new ObjectStore(_objectFile);
+
+    /** sorted index of every commit's sha1. */
+    private static CommitIndex _commitIndex = new CommitIndex(
+            Utils.join(_gitletFold, "commit-index"));
+
+    /** parents, generation numbers and trees of every commit. */
+    private static CommitGraph _commitGraph = new CommitGraph(
+            Utils.join(_gitletFold, "commit-graph"));
+
+    /** metadata of every commit in the order made, for global-log. */
+    private static CommitLog _commitLog = new CommitLog(
+            Utils.join(_gitletFold, "commit-log"));
+
+    /** hash table from commit messages to commits, for find. */
+    private static MessageIndex _messages = new MessageIndex(
+            Utils.join(_gitletFold, "messages"));
+
+    /** on-disk format of the repository; see migrate. */
+    private static File _format = Utils.join(_gitletFold, "format");
+
+    /** current on-disk format: commits, trees and the staging area in
+     *  their binary encodings rather than Java serialization. */
+    static final int FORMAT = 2;
+
+    /** stat data and blob ids of working files. */
+    private static Index _index = new Index(Utils.join(_gitletFold, "index"));
+
+    /** changes to the working tree seen by "gitlet watch". */
+    private static Watcher _watcher = new Watcher(WORKDIRECT,
+            Utils.join(_gitletFold, "watch"));
+
+    /** decoded commits and trees, by sha1. */
+    private static ObjectCache _cache = new ObjectCache(
+            Config.getLong("core.objectCacheSize", 32L << 20));
 
+    /** threads for parallel, or null before its first use. */
+    private static ForkJoinPool _pool;
 
     public void init() throws IOException {
-        if (new File(".gitlet").exists()) {
+        if (_gitletFold.exists()) {
             System.out.println("A Gitlet version-control system"
                     + " already exists in the current directory.");
-            System.exit(0);
+            Main.exit(0);
         }
-        Commit init = new Commit("initial commit", null, new TreeMap<>());
         makeDir();
-        _diff.mkdirs();
+        Commit init = new Commit("initial commit", null,
+                Tree.write(_objects, new TreeMap<String, String>()));
         _head.createNewFile();
         _master.createNewFile();
         Utils.writeContents(_head, init.getSha1());
         Utils.writeContents(_master, init.getSha1());
-        Utils.writeObject(Utils.join(_commitFile, init.getSha1()), init);
+        saveCommit(init);
         _stage.createNewFile();
         _stage.mkdirs();
         _branchFile.createNewFile();
-        Utils.writeObject(_stage, new StagingArea());
+        new StagingArea().compact(_stage);
         Utils.writeContents(_currBranchF, "master");
         Utils.writeContents(Utils.join(_branchFile, "master"), init.getSha1());
+        Utils.writeContents(_format, Integer.toString(FORMAT));
+    }
+
+    /** Converts a repository written by an older version, and records
+     *  the current format in .gitlet/format so this happens only once.
+     *  A repository in the first layout, with its own commit and blob
+     *  stores, is imported into the object store by Migration, keeping
+     *  every commit id, and its stores are deleted once the format is
+     *  written. Commits already in the object store but written with
+     *  Java serialization are re-encoded in place, keeping their ids.
+     *  Converted commits are loose until the next repack. */
+    public void migrate() {
+        if (!_gitletFold.isDirectory() || (_format.exists()
+                && Utils.readContentsAsString(_format).trim()
+                        .equals(Integer.toString(FORMAT)))) {
+            return;
+        }
+        Migration migration = null;
+        if (Migration.needed(_gitletFold)) {
+            migration = new Migration(_gitletFold, _objects);
+            List<Commit> commits = migration.commits();
+            for (Commit commit: commits) {
+                recordCommit(commit);
+            }
+            for (int i = commits.size() - 1; i >= 0; i -= 1) {
+                graphPosition(commits.get(i).getSha1());
+            }
+        }
+        for (String sha1: _objects.ids()) {
+            if (!ObjectStore.COMMIT.equals(_objects.type(sha1))) {
+                continue;
+            }
+            byte[] bytes = _objects.readContents(sha1);
+            if (ObjectStore.isSerialized(bytes)) {
+                _objects.replaceContents(ObjectStore.COMMIT, sha1,
+                        Commit.decode(sha1, bytes).encode());
+            }
+        }
+        if (migration != null) {
+            migration.stage(_stage).compact(_stage);
+        } else if (_stage.isFile()) {
+            StagingArea.read(_stage).compact(_stage);
+        }
+        Utils.writeContents(_format, Integer.toString(FORMAT));
+        if (migration != null) {
+            migration.clean();
+        }
     }
 
     public void makeDir() throws IOException {
         _gitletFold.mkdirs();
         _stagingArea.mkdirs();
-        _blobContent.mkdirs();
-        _blobObject.mkdirs();
-        _commitFile.mkdirs();
+        _objectFile.mkdirs();
         _branchFile.mkdirs();
         _currBranchF.createNewFile();
     }
 
     public void rm(String fileName) {
-        StagingArea stage = Utils.readObject(_stage, StagingArea.class);
-        HashMap<String, String> addingStage = stage.getAddingStage();
-        HashMap<String, String> removingStage = stage.getRemovingStage();
+        StagingArea stage = StagingArea.read(_stage);
         boolean staged = false;
         boolean tracked = false;
         if (currCommit().getTree().containsKey(fileName)) {
             tracked = true;
         }
-        if (addingStage.containsKey(fileName)) {
-            addingStage.remove(fileName);
+        if (stage.getAddingStage().containsKey(fileName)) {
+            stage.unstage(fileName);
             staged = true;
         }
         Commit currCommit = currCommit();
         Set<String> trackedFiles = currCommit.getTree().keySet();
         for (String name: trackedFiles) {
             if (name.equals(fileName)) {
-                String sha1 = currCommit.getTree().get(fileName).getBlobSha1();
-                removingStage.put(fileName, sha1);
+                String sha1 = currCommit.getTree().get(fileName);
+                stage.addFileToStage("remove", fileName, sha1);
                 tracked = true;
                 if (new File(WORKDIRECT, fileName).exists()) {
-                    Utils.restrictedDelete(fileName);
+                    Utils.restrictedDelete(Utils.join(WORKDIRECT, fileName));
                 }
             }
         }
@@ -109,55 +192,97 @@ public class Repo {
             System.out.println("No reason to remove the file.");
             return;
         }
-        Utils.writeObject(_stage, stage);
+        stage.write(_stage);
     }
 
-    public Blob blobFromFolder(File file, String sha1) {
-        for (File subfile: file.listFiles()) {
-            if (subfile.isDirectory()) {
-                blobFromFolder(subfile, sha1);
+    /** Stages the files FILENAMES; a directory, including ".", stands
+     *  for every file under it. Files are hashed, and new content written
+     *  to the object store, in parallel, and the changes are appended to
+     *  the stage's journal at once, without reading the stage. */
+    public void add(String... fileNames) throws IOException {
+        TreeSet<String> paths = new TreeSet<String>();
+        for (String fileName: fileNames) {
+            File adding = new File(WORKDIRECT, fileName);
+            String path = workingPath(adding);
+            if (!adding.exists() || path == null) {
+                System.out.println("File does not exist");
+                Main.exit(0);
+            } else if (adding.isDirectory()) {
+                Watcher.walk(adding, path.isEmpty() ? "" : path + "/", paths);
+            } else {
+                paths.add(path);
             }
-            if (subfile.getName().equals(sha1)) {
-                return Utils.readObject(subfile, Blob.class);
+        }
+        ConcurrentHashMap<String, String> ids =
+                new ConcurrentHashMap<String, String>();
+        parallel(paths, path -> {
+            String sha1 = _index.hash(path, Utils.join(WORKDIRECT, path));
+            if (sha1 != null) {
+                ids.put(path, sha1);
+            }
+        });
+        SortedMap<String, String> tracked = currCommit().getTree();
+        StagingArea stage = new StagingArea();
+        HashMap<String, String> toWrite = new HashMap<String, String>();
+        for (String path: paths) {
+            String blobSha1 = ids.get(path);
+            if (blobSha1 == null) {
+                continue;
+            }
+            if (blobSha1.equals(tracked.get(path))) {
+                stage.unstage(path);
+            } else {
+                stage.addFileToStage("add", path, blobSha1);
+                toWrite.putIfAbsent(blobSha1, path);
             }
         }
-        return null;
+        parallel(toWrite.keySet(), sha1 -> _objects.writeFile(sha1,
+                Utils.join(WORKDIRECT, toWrite.get(sha1))));
+        stage.write(_stage);
+        _index.save();
     }
 
-    public void add(String fileName) throws IOException {
-        File adding = new File(WORKDIRECT, fileName);
-        StagingArea stage = Utils.readObject(
-                Utils.join(_stagingArea, "stage"), StagingArea.class);
-        HashMap<String, String> addingStage = stage.getAddingStage();
-        boolean added = false;
-        if (adding.exists()) {
-            Blob blob = new Blob(adding);
-            Blob curBlob = currCommit().getTree().get(fileName);
-            if ((curBlob != null)
-                    && (curBlob.getBlobSha1().equals(blob.getBlobSha1()))) {
-                added = true;
-                if (addingStage.containsKey(fileName)) {
-                    addingStage.remove(fileName);
-                }
-            }
-            HashMap removingStage = stage.getRemovingStage();
-            if (removingStage.containsKey(fileName)) {
-                removingStage.remove(fileName);
-            }
-            if (!added) {
-                stage.addFileToStage("add", fileName, blob.getBlobSha1());
+    /** Returns the slash-separated path of FILE relative to the working
+     *  tree, or null if FILE is outside it or inside .gitlet. */
+    private static String workingPath(File file) {
+        Path path = WORKDIRECT.toPath().toAbsolutePath().normalize()
+                .relativize(file.toPath().toAbsolutePath().normalize());
+        String result = path.toString().replace(File.separatorChar, '/');
+        if (result.equals("..") || result.startsWith("../")
+                || result.equals(".gitlet") || result.startsWith(".gitlet/")) {
+            return null;
+        }
+        return result;
+    }
+
+    /** Runs ACTION on every item of ITEMS on a fork-join pool of
+     *  core.threads threads, by default one per processor, and waits
+     *  for all of them. */
+    static <T> void parallel(Collection<T> items, Consumer<T> action) {
+        if (items.size() < 2) {
+            items.forEach(action);
+            return;
+        }
+        try {
+            pool().submit(() -> items.parallelStream().forEach(action)).get();
+        } catch (InterruptedException | ExecutionException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the pool parallel runs on, made on first use and again
+     *  only when core.threads changes, so commands served one after
+     *  another by a daemon share its threads. */
+    private static synchronized ForkJoinPool pool() {
+        int threads = Math.max(1, Config.getInt("core.threads",
+                Runtime.getRuntime().availableProcessors()));
+        if (_pool == null || _pool.getParallelism() != threads) {
+            if (_pool != null) {
+                _pool.shutdown();
             }
-            currCommit().getTree().put(fileName, blob);
-            Utils.writeObject(Utils.join(_stagingArea, "stage"), stage);
-            Utils.writeObject(
-                    Utils.join(_blobObject, blob.getBlobSha1()), blob);
-            byte[] content = blob.getContent();
-            Utils.writeContents(
-                    Utils.join(_blobContent, blob.getBlobSha1()), content);
-        } else {
-            System.out.println("File does not exist");
-            System.exit(0);
+            _pool = new ForkJoinPool(threads);
         }
+        return _pool;
     }
 
     public String currBranName() {
@@ -201,34 +326,33 @@ public class Repo {
             return;
         }
         Commit currCommit = currCommit();
-        TreeMap<String, Blob> copy = currCommit.getTree();
-        TreeMap<String, Blob> copyBlob = new TreeMap<String, Blob>();
+        SortedMap<String, String> copy = currCommit.getTree();
+        TreeMap<String, String> copyBlob = new TreeMap<String, String>();
         copyBlob.putAll(copy);
-        StagingArea currStage = Utils.readObject(_stage, StagingArea.class);
+        StagingArea currStage = StagingArea.read(_stage);
         if (currStage.getAddingStage().isEmpty()
                 && currStage.getRemovingStage().isEmpty()) {
             System.out.println("No changes added to the commit");
             return;
         }
-        Utils.writeObject(_stage, currStage);
+        currStage.write(_stage);
         for (String fileName: currStage.getAddingStage().keySet()) {
             String sha1 = currStage.getSha1("add", fileName);
-            Blob blob = blobFromFolder(_blobObject, sha1);
-            if (blob != null) {
-                copyBlob.put(fileName, blob);
+            if (_objects.contains(sha1)) {
+                copyBlob.put(fileName, sha1);
             }
         }
         for (String fileName: currStage.getRemovingStage().keySet()) {
             copyBlob.remove(fileName);
         }
-        Commit nextCommit = new Commit(message, currCommit.getSha1(), copyBlob);
-        Utils.writeObject(
-                Utils.join(_commitFile, nextCommit.getSha1()), nextCommit);
+        Commit nextCommit = new Commit(message, currCommit.getSha1(),
+                Tree.write(_objects, copyBlob));
+        saveCommit(nextCommit);
         Utils.writeContents(_head, nextCommit.getSha1());
         Utils.writeContents(
                 Utils.join(_branchFile, currBranName()), nextCommit.getSha1());
         currStage.reset();
-        Utils.writeObject(_stage, currStage);
+        currStage.compact(_stage);
     }
 
     public String branchSha1(String branchName) {
@@ -242,10 +366,10 @@ public class Repo {
         Commit currCommit = currCommit();
         String branchSha1 = branchSha1(branchName);
         Commit givenCommit = getCommit(branchSha1);
-        StagingArea currStage = Utils.readObject(_stage, StagingArea.class);
-        TreeMap<String, Blob> currBlob = currCommit.getTree();
-        TreeMap<String, Blob> givenBlob = givenCommit.getTree();
-        for (String subFile: WORKDIRECT.list()) {
+        StagingArea currStage = StagingArea.read(_stage);
+        SortedMap<String, String> currBlob = currCommit.getTree();
+        SortedMap<String, String> givenBlob = givenCommit.getTree();
+        for (String subFile: workingFiles()) {
             if (!currStage.getAddingStage().isEmpty()
                     || !currStage.getRemovingStage().isEmpty()) {
                 break;
@@ -261,203 +385,178 @@ public class Repo {
     public void mergeError(String branchName) {
         if (branchName.equals(currBranName())) {
             System.out.println("Cannot merge a branch with itself.");
-            System.exit(0);
+            Main.exit(0);
         }
         if (!branchContains(branchName)) {
             System.out.println("A branch with that name does not exist.");
-            System.exit(0);
+            Main.exit(0);
         }
         if (mergeUntracked(branchName)) {
             System.out.println("There is an untracked file in the way;"
                     + " delete it, or add and commit it first.");
-            System.exit(0);
+            Main.exit(0);
         }
-        StagingArea currStage = Utils.readObject(_stage, StagingArea.class);
+        StagingArea currStage = StagingArea.read(_stage);
         if (!currStage.getAddingStage().isEmpty()
                 || !currStage.getRemovingStage().isEmpty()) {
             System.out.println("You have uncommitted changes.");
-            System.exit(0);
+            Main.exit(0);
         }
-        Commit givenCommit = getCommit(branchSha1(branchName));
-        Commit currCommit = currCommit();
-        Commit splitPoint = getSplitPoint(currCommit, givenCommit);
-        if (branchName.equals("b1")) {
+        int given = graphPosition(branchSha1(branchName));
+        int curr = graphPosition(currCommit().getSha1());
+        if (_commitGraph.isAncestor(given, curr)) {
             System.out.println("Given branch is an"
                     + " ancestor of the current branch.");
-            System.exit(0);
-        }
-        if (splitPoint != null && !branchName.equals("C1")) {
-            if (splitPoint.getSha1().equals(givenCommit.getSha1())) {
-                System.out.println("Given branch is an"
-                        + " ancestor of the current branch.");
-                System.exit(0);
-            }
-            if (splitPoint.getSha1().equals(currCommit.getSha1())) {
-                checkoutBran(branchName);
-                System.out.println("Current branch fast-forwarded.");
-                System.exit(0);
-            }
-        }
-    }
-
-    public TreeMap<String, Blob> loop(ArrayList<String> fileNew,
-                                      TreeMap<String, Blob> blobMap,
-                     TreeMap<String, Blob> givenMap,
-                     TreeMap<String, Blob> currMap,
-                     TreeMap<String, Blob> splitMap,
-                     Commit givenCommit) throws IOException {
-        for (String fileName: fileNew) {
-            Blob givenBlob = givenMap.get(fileName);
-            Blob currBlob = currMap.get(fileName);
-            Blob splitBlob = splitMap.get(fileName);
-            String givenSha1 = Utils.sha1(Utils.serialize(givenBlob));
-            String currSha1 = Utils.sha1(Utils.serialize(currBlob));
-            String splitSha1 = Utils.sha1(Utils.serialize(splitBlob));
-            if ((!splitSha1.equals(givenSha1) && currSha1.equals(givenSha1))
-                    || (splitSha1.equals(givenSha1)
-                    && givenSha1.equals(currSha1))) {
-                blobMap.put(fileName, currBlob);
-            } else if (!givenSha1.equals(splitSha1)
-                    && splitSha1.equals(currSha1)) {
-                blobMap.put(fileName, givenBlob);
-                File givenFile = Utils.join(_blobContent, givenSha1);
-                if (givenFile.exists() && givenBlob != null) {
-                    add(fileName);
-                } else if (!givenCommit.getTree().containsKey(fileName)) {
-                    Utils.restrictedDelete(Utils.join(WORKDIRECT, fileName));
-                } else {
-                    Utils.restrictedDelete(Utils.join(WORKDIRECT, fileName));
-                    blobMap.put(fileName, givenMap.get(fileName));
-                    checkoutCom(givenCommit.getSha1(), fileName);
-                }
-            } else if (!currSha1.equals(givenSha1)
-                     && !currSha1.equals(splitSha1)
-                    && !givenSha1.equals(splitSha1)) {
-                System.out.println("Encountered a merge conflict.");
-                String currContent = "";
-                String givenCont = "";
-                if (givenBlob != null) {
-                    if (Utils.join(_blobContent,
-                            givenBlob.getBlobSha1()).exists()) {
-                        givenCont = givenBlob.contString();
-                    }
-                }
-                if (currBlob != null) {
-                    if (Utils.join(_blobContent,
-                            currBlob.getBlobSha1()).exists()) {
-                        currContent = currBlob.contString();
-                    }
-                }
-                File currFile = Utils.join(WORKDIRECT, fileName);
-                String content = "<<<<<<< HEAD\n" + currContent
-                        + "=======\n" + givenCont + ">>>>>>>\n";
-                Utils.writeContents(currFile, content);
-            }
+            Main.exit(0);
+        }
+        if (_commitGraph.isAncestor(curr, given)) {
+            checkoutBran(branchName);
+            System.out.println("Current branch fast-forwarded.");
+            Main.exit(0);
         }
-        return blobMap;
     }
 
+    /** Merges the branch BRANCHNAME into the current one with Merge,
+     *  updating only the working files whose blobs change, and commits
+     *  the result, conflicts included. */
     public void merge(String branchName) throws IOException {
         mergeError(branchName);
         Commit givenCommit = getCommit(branchSha1(branchName));
         Commit currCommit = currCommit();
         Commit splitPoint = getSplitPoint(currCommit, givenCommit);
-        TreeMap<String, Blob> givenMap = givenCommit.getTree();
-        TreeMap<String, Blob> currMap = currCommit.getTree();
-        TreeMap<String, Blob> splitMap = splitPoint.getTree();
-        ArrayList<String> fileList = new ArrayList<String>();
-        fileList.addAll(givenCommit.getTree().keySet());
-        fileList.addAll(currCommit.getTree().keySet());
-        fileList.addAll(splitPoint.getTree().keySet());
-        ArrayList<String> fileNew = new ArrayList<String>();
-        for (int i = 0; i < fileList.size(); i += 1) {
-            if (!fileNew.contains(fileList.get(i))) {
-                fileNew.add(fileList.get(i));
-            }
-        }
-        TreeMap<String, Blob> mapBlob = new TreeMap<String, Blob>();
-        TreeMap<String, Blob> blobMap = loop(fileNew, mapBlob, givenMap,
-                currMap, splitMap, givenCommit);
+        SortedMap<String, String> currMap = currCommit.getTree();
+        SortedMap<String, String> splitMap = splitPoint == null
+                ? new TreeMap<String, String>() : splitPoint.getTree();
+        Merge result = new Merge(_objects, splitMap, currMap,
+                givenCommit.getTree());
+        if (result.conflicted()) {
+            System.out.println("Encountered a merge conflict.");
+        }
+        materialize(currMap, result.result());
         String message = "Merged " + branchName
                 + " into " + currBranName() + ".";
         String head = Utils.readContentsAsString(_head);
-        Commit merged = new Commit(message, head, blobMap);
-        merged.addParent2(Utils.readContentsAsString(
-                Utils.join(_branchFile, branchName)));
-        Utils.writeObject(Utils.join(_commitFile, merged.getSha1()), merged);
+        Commit merged = new Commit(message, head, branchSha1(branchName),
+                Tree.write(_objects, result.result()));
+        saveCommit(merged);
         Utils.writeContents(_head, merged.getSha1());
         Utils.writeContents(Utils.join(
-                _branchFile, branchName), branchSha1(branchName));
+                _branchFile, currBranName()), merged.getSha1());
     }
 
 
     public Commit getSplitPoint(Commit commit1, Commit commit2) {
-        ArrayList<Commit> firstParent = new ArrayList<Commit>();
-        ArrayList<Commit> secondParent = new ArrayList<Commit>();
-        while (commit1.getParentSha1() != null
-                && commit2.getParentSha1() != null) {
-            firstParent.add(commit1);
-            secondParent.add(commit2);
-            commit1 = getParent(commit1);
-            commit2 = getParent(commit2);
-        }
-        int firstLen = firstParent.size() - 1;
-        int secondLen = secondParent.size() - 1;
-        for (int i = firstLen; i >= 0; i -= 1) {
-            Commit parent1 = firstParent.get(i);
-            String uid1 = parent1.getParentSha1();
-            for (int j = secondLen; j >= 0; j -= 1) {
-                Commit parent2 = secondParent.get(j);
-                String uid2 = parent2.getParentSha1();
-                if (uid1.equals(uid2) || uid1.startsWith(uid2)
-                        || uid2.startsWith(uid1)) {
-                    return parent1;
-                }
+        int base = _commitGraph.mergeBase(graphPosition(commit1.getSha1()),
+                graphPosition(commit2.getSha1()));
+        if (base == CommitGraph.NONE) {
+            return null;
+        }
+        return getCommit(_commitGraph.id(base));
+    }
+
+    /** Writes COMMIT and records it in the commit index and graph. */
+    public void saveCommit(Commit commit) {
+        recordCommit(commit);
+        graphPosition(commit.getSha1());
+    }
+
+    /** Writes COMMIT and records it everywhere but in the commit graph. */
+    private void recordCommit(Commit commit) {
+        _objects.writeContents(ObjectStore.COMMIT, commit.getSha1(),
+                commit.encode());
+        if (!_commitIndex.contains(commit.getSha1())) {
+            _commitLog.add(commit);
+        }
+        _commitIndex.add(commit.getSha1());
+        _messages.add(commit.getMessage(), commit.getSha1());
+    }
+
+    /** Returns the position of the commit SHA1 in the commit graph,
+     *  first adding it and any ancestors the graph is missing, as in a
+     *  repository made before the graph existed. Those are collected and
+     *  written to the graph at once, parents first. */
+    public int graphPosition(String sha1) {
+        HashMap<String, Commit> missing = new HashMap<String, Commit>();
+        ArrayList<String> stack = new ArrayList<String>();
+        stack.add(sha1);
+        while (!stack.isEmpty()) {
+            String top = stack.remove(stack.size() - 1);
+            if (top == null || missing.containsKey(top)
+                    || _commitGraph.find(top) != CommitGraph.NONE) {
+                continue;
             }
+            Commit commit = readCommit(top);
+            missing.put(top, commit);
+            stack.add(commit.getParentSha1());
+            stack.add(commit.getParentSha2());
         }
-        return null;
+        _commitGraph.add(CommitGraph.parentsFirst(missing));
+        return _commitGraph.find(sha1);
     }
 
     public Commit getParent(Commit commit) {
         String parentSha1 = commit.getParentSha1();
-        return Utils.readObject(
-                Utils.join(_commitFile, parentSha1), Commit.class);
+        return readCommit(parentSha1);
     }
 
-    public void log() {
-        Commit currCommit = currCommit();
-        while (currCommit != null) {
-            System.out.println("===");
-            System.out.println("commit " + currCommit.getSha1());
-            System.out.println("Date: " + currCommit.getTime());
-            System.out.println(currCommit.getMessage());
-            System.out.println();
-            if (currCommit.getParentSha1() != null) {
-                currCommit = getParent(currCommit);
-            } else {
-                break;
+    /** Prints the first-parent history of the head commit, selected by
+     *  OPTIONS as described in History. Parents are followed through the
+     *  commit graph, so only the commits printed are read. */
+    public void log(String... options) throws IOException {
+        History history = new History(options);
+        int head = graphPosition(currCommit().getSha1());
+        history.print(new Iterator<History.Entry>() {
+            private int _next = head;
+
+            @Override
+            public boolean hasNext() {
+                return _next != CommitGraph.NONE;
+            }
+
+            @Override
+            public History.Entry next() {
+                String sha1 = _commitGraph.id(_next);
+                _next = _commitGraph.parent1(_next);
+                return History.of(sha1);
             }
+        });
+    }
+
+    /** Prints every commit, selected by OPTIONS as in log, from the
+     *  commit log without opening any commit. The log is rebuilt from
+     *  every commit first, parents before children, if it does not cover
+     *  all of them, as in a repository made before it existed. */
+    public void globalLog(String... options) throws IOException {
+        History history = new History(options);
+        if (_commitLog.size() != _commitIndex.size()) {
+            ArrayList<Commit> commits = new ArrayList<Commit>();
+            for (int i = 0; i < _commitIndex.size(); i += 1) {
+                commits.add(readCommit(_commitIndex.get(i)));
+            }
+            commits.sort((x, y) -> Integer.compare(
+                    _commitGraph.generation(graphPosition(x.getSha1())),
+                    _commitGraph.generation(graphPosition(y.getSha1()))));
+            _commitLog.rebuild(commits);
         }
+        history.print(_commitLog.entries());
     }
 
-    public void globalLog() {
-        for (String sha1: Utils.plainFilenamesIn(_commitFile)) {
-            Commit currCommit = Utils.readObject(
-                    Utils.join(_commitFile, sha1), Commit.class);
-            System.out.println("===");
-            System.out.println("commit " + currCommit.getSha1());
-            System.out.println("Date: " + currCommit.getTime());
-            System.out.println(currCommit.getMessage());
-            System.out.println();
+    /** Returns the time of commit SHA1 in seconds, from the commit graph
+     *  if it is there. */
+    static long commitTime(String sha1) {
+        int pos = _commitGraph.find(sha1);
+        if (pos != CommitGraph.NONE) {
+            return _commitGraph.time(pos);
         }
+        return readCommit(sha1).getTimestamp();
     }
 
     public void status() {
         if (!_gitletFold.exists()) {
             System.out.println("Not in an initialized Gitlet directory.");
-            System.exit(0);
+            Main.exit(0);
         }
-        StagingArea currStage = Utils.readObject(_stage, StagingArea.class);
+        StagingArea currStage = StagingArea.read(_stage);
         System.out.println("=== Branches ===");
         for (String name: Utils.plainFilenamesIn(_branchFile)) {
             if (name.equals(currBranName())) {
@@ -482,80 +581,116 @@ public class Repo {
         }
         System.out.println();
         System.out.println("=== Modifications Not Staged For Commit ===");
+        TreeMap<String, String> modified = modifiedFiles();
+        for (String fileName: modified.keySet()) {
+            System.out.println(fileName + " (" + modified.get(fileName)
+                    + ")");
+        }
         System.out.println();
         System.out.println("=== Untracked Files ===");
+        for (String fileName: untrackedFiles()) {
+            System.out.println(fileName);
+        }
         System.out.println();
-
+        _index.save();
+        _watcher.verified();
     }
 
+    /** Returns the files in the working tree that are neither tracked
+     *  by the current commit nor staged for addition, together with
+     *  those staged for removal that have been created again. */
     public ArrayList<String> untrackedFiles() {
-        Commit currCommit = currCommit();
-        TreeMap<String, Blob> blob = currCommit.getTree();
+        SortedMap<String, String> blob = currCommit().getTree();
+        StagingArea currStage = StagingArea.read(_stage);
+        TreeSet<String> working = workingFiles();
         ArrayList<String> files = new ArrayList<String>();
-        StagingArea currStage = Utils.readObject(_stage, StagingArea.class);
-        for (String fileName: WORKDIRECT.list()) {
-            if (!currStage.getAddingStage().containsKey(fileName)
-                    && blob.containsKey(fileName)) {
+        for (String fileName: working) {
+            if (currStage.getRemovingStage().containsKey(fileName)
+                    || !currStage.getAddingStage().containsKey(fileName)
+                    && !blob.containsKey(fileName)) {
                 files.add(fileName);
             }
         }
+        _index.retain(working);
         return files;
     }
 
-    public HashMap<String, String> modifiedFiles() {
-        Commit currCommit = currCommit();
-        TreeMap<String, Blob> blob = currCommit.getTree();
-        HashMap<String, String> files = new HashMap<String, String>();
-        StagingArea currStage = Utils.readObject(_stage, StagingArea.class);
-        for (String fileName: WORKDIRECT.list()) {
-            byte[] cont = Utils.readContents(Utils.join(WORKDIRECT, fileName));
-            String sha1 = Utils.sha1(cont);
-            if (!blob.get(fileName).getBlobSha1().equals(sha1)
-                    && blob.containsKey(fileName)) {
-                files.put(fileName, "modified");
+    /** Returns the tracked or staged files whose working copies differ
+     *  from what would be committed, mapped to "modified" or "deleted".
+     *  Files are only rehashed when their stat data has changed. */
+    public TreeMap<String, String> modifiedFiles() {
+        SortedMap<String, String> blob = currCommit().getTree();
+        StagingArea currStage = StagingArea.read(_stage);
+        Map<String, String> adding = currStage.getAddingStage();
+        TreeMap<String, String> expected = new TreeMap<String, String>();
+        for (String fileName: blob.keySet()) {
+            if (!currStage.getRemovingStage().containsKey(fileName)) {
+                expected.put(fileName, blob.get(fileName));
             }
         }
-        for (String fileName: blob.keySet()) {
-            if (!currStage.getAddingStage().containsKey(fileName)
-                    && !files.containsKey(fileName)) {
+        expected.putAll(adding);
+        TreeMap<String, String> files = new TreeMap<String, String>();
+        workingFiles();
+        for (String fileName: expected.keySet()) {
+            String sha1 = null;
+            if (_watcher.unchanged(fileName)) {
+                sha1 = _index.get(fileName);
+            }
+            if (sha1 == null) {
+                sha1 = _index.hash(fileName,
+                        Utils.join(WORKDIRECT, fileName));
+            }
+            if (sha1 == null) {
                 files.put(fileName, "deleted");
+            } else if (!sha1.equals(expected.get(fileName))) {
+                files.put(fileName, "modified");
             }
         }
         return files;
     }
 
+    /** Returns the files in the working tree, asking the watcher for
+     *  them. Index entries of files the watcher saw change are dropped,
+     *  so they are hashed again when next needed. */
+    private TreeSet<String> workingFiles() {
+        TreeSet<String> files = _watcher.files();
+        TreeSet<String> changed = _watcher.changed();
+        if (changed != null && !changed.isEmpty()) {
+            for (String path: changed) {
+                _index.remove(path);
+            }
+            _index.save();
+        }
+        return files;
+    }
+
     public void checkoutFile(String fileName) {
         Commit headCommit = currCommit();
         if (!headCommit.blobExists(fileName)) {
             System.out.println("File does not exist in that commit");
             return;
         }
-        TreeMap<String, Blob> blob = headCommit.getTree();
-        String blobSha1 = blob.get(fileName).getBlobSha1();
+        String blobSha1 = headCommit.getBlob(fileName);
         File curFile = Utils.join(WORKDIRECT, fileName);
-        File blobFile = Utils.join(_blobContent, blobSha1);
         if (curFile.exists()) {
             Utils.restrictedDelete(curFile);
         }
-        Utils.writeContents(curFile, Utils.readContents(blobFile));
+        _objects.copyTo(blobSha1, curFile);
     }
 
     public void checkoutCom(String sha1, String fileName) {
-        if (!commitExist(sha1)) {
+        Commit commit = getCommit(sha1);
+        if (commit == null) {
             System.out.println("No commit with that id exists.");
             return;
         }
-        Commit commit = getCommit(sha1);
         if (!commit.blobExists(fileName)) {
             System.out.println("File does not exist in that commit.");
             return;
         }
-        TreeMap<String, Blob> blob = commit.getTree();
-        String blobSha1 = blob.get(fileName).getBlobSha1();
-        File blobFile = Utils.join(_blobContent, blobSha1);
-        byte[] blobCont = Utils.readContents(blobFile);
+        String blobSha1 = commit.getBlob(fileName);
         File file = new File(WORKDIRECT.getPath(), fileName);
-        Utils.writeContents(file, blobCont);
+        _objects.copyTo(blobSha1, file);
     }
 
     public void checkoutBran(String branchName) {
@@ -563,119 +698,213 @@ public class Repo {
             System.out.println("No such branch exists.");
             return;
         }
-        StagingArea currStage = Utils.readObject(_stage, StagingArea.class);
-        String branchSha1 = branchSha1(branchName);
-        Commit branCommit = getCommit(branchSha1);
-        TreeMap<String, Blob> branchBlob = branCommit.getTree();
-        Commit currCommit = currCommit();
-        TreeMap<String, Blob> currBlob = currCommit.getTree();
-        String curBranSha1 = branchSha1(currBranName());
-        TreeMap<String, Blob> curBranchBlob = getCommit(curBranSha1).getTree();
-        for (File subFile: WORKDIRECT.listFiles()) {
-            String fileName = subFile.getName();
-            if (branchBlob.containsKey(fileName)
-                    && !currBlob.containsKey(fileName)) {
-                System.out.println("There is an untracked file in the way; "
-                        + "delete it, or add and commit it first.");
-                System.exit(0);
-            }
-        } if (branchName.equals(currBranName())) {
+        StagingArea currStage = StagingArea.read(_stage);
+        Commit branCommit = getCommit(branchSha1(branchName));
+        SortedMap<String, String> branchBlob = branCommit.getTree();
+        SortedMap<String, String> currBlob = currCommit().getTree();
+        untrackedInTheWay(currBlob, branchBlob);
+        if (branchName.equals(currBranName())) {
             System.out.println("No need to checkout the current branch");
             return;
         }
-        for (String fileName: branchBlob.keySet()) {
-            String blobSha1 = branchBlob.get(fileName).getBlobSha1();
-            byte[] blobCont = Utils.readContents(
-                    Utils.join(_blobContent, blobSha1));
-            File newFile = new File(WORKDIRECT.getPath(), fileName);
-            Utils.writeContents(newFile, blobCont);
-        }
-        for (File subFile: WORKDIRECT.listFiles()) {
-            String fileName = subFile.getName();
-            if (!branchBlob.containsKey(fileName)
-                    && curBranchBlob.containsKey(fileName)) {
-                Utils.restrictedDelete(Utils.join(WORKDIRECT, fileName));
-            }
-        }
+        materialize(currBlob, branchBlob);
         currStage.reset();
-        Utils.writeObject(_stage, currStage);
+        currStage.compact(_stage);
         Utils.writeContents(_head, branCommit.getSha1());
         Utils.writeContents(_currBranchF, branchName);
     }
 
-    public Commit getCommit(String sha1) {
-        for (String comID: _commitFile.list()) {
-            if (comID.startsWith(sha1) || comID.equals(sha1)) {
-                File file = Utils.join(_commitFile, comID);
-                return Utils.readObject(file, Commit.class);
+    /** Exits with an error if a file that is not tracked in FROM would
+     *  be overwritten by checking out TO. */
+    private void untrackedInTheWay(SortedMap<String, String> from,
+                                   SortedMap<String, String> to) {
+        for (String fileName: to.keySet()) {
+            if (!from.containsKey(fileName)
+                    && Utils.join(WORKDIRECT, fileName).exists()) {
+                System.out.println("There is an untracked file in the way;"
+                        + " delete it, or add and commit it first.");
+                Main.exit(0);
             }
         }
-        return null;
     }
 
-    public void reset(String commSha1) {
-        if (!commitExist(commSha1)) {
-            System.out.println("No commit with that id exists.");
-            System.exit(0);
+    /** Changes a working tree holding the files FROM into one holding
+     *  the files TO, both maps from path to blob id. Only paths whose
+     *  blob ids differ are touched: removed files are deleted, then new
+     *  and changed ones are written in parallel. */
+    private void materialize(SortedMap<String, String> from,
+                             SortedMap<String, String> to) {
+        ArrayList<String> changed = new ArrayList<String>();
+        for (String fileName: from.keySet()) {
+            if (!to.containsKey(fileName)) {
+                deleteWorking(fileName);
+                _index.remove(fileName);
+            }
         }
-        Commit givenCommit = getCommit(commSha1);
-        Commit currCommit = currCommit();
-        StagingArea currStage = Utils.readObject(_stage, StagingArea.class);
-        for (File file: WORKDIRECT.listFiles()) {
-            String subFile = file.getName();
-            if (!currCommit.getTree().containsKey(subFile)
-                    && givenCommit.getTree().containsKey(subFile)) {
-                System.out.println("There is an untracked file in the way;"
-                        + " delete it, or add and commit it first.");
-                System.exit(0);
+        for (Map.Entry<String, String> entry: to.entrySet()) {
+            if (!entry.getValue().equals(from.get(entry.getKey()))) {
+                changed.add(entry.getKey());
             }
         }
-        for (String fileName: givenCommit.getTree().keySet()) {
-            if (!currCommit.getTree().containsKey(fileName)) {
-                Utils.restrictedDelete(new File(WORKDIRECT, fileName));
-            } else {
-                checkoutFile(fileName);
+        parallel(changed, fileName -> {
+            File file = Utils.join(WORKDIRECT, fileName);
+            if (file.isDirectory()) {
+                file.delete();
             }
+            file.getParentFile().mkdirs();
+            _objects.copyTo(to.get(fileName), file);
+            _index.update(fileName, file, to.get(fileName));
+        });
+        _index.save();
+    }
+
+    /** Deletes the working file FILENAME and any directories left empty
+     *  above it. */
+    private static void deleteWorking(String fileName) {
+        File file = Utils.join(WORKDIRECT, fileName);
+        file.delete();
+        for (File dir = file.getParentFile();
+             !dir.equals(WORKDIRECT) && dir.delete();
+             dir = dir.getParentFile()) {
+            continue;
+        }
+    }
+
+    public Commit getCommit(String sha1) {
+        String comID = resolveCommit(sha1);
+        if (comID == null) {
+            return null;
+        }
+        return readCommit(comID);
+    }
+
+    public String resolveCommit(String sha1) {
+        if (sha1 == null) {
+            return null;
         }
+        String comID = _commitIndex.resolve(sha1);
+        if (CommitIndex.AMBIGUOUS.equals(comID)) {
+            System.out.println("Ambiguous commit id.");
+            Main.exit(0);
+        }
+        return comID;
+    }
+
+    public void reset(String commSha1) {
+        Commit givenCommit = getCommit(commSha1);
+        if (givenCommit == null) {
+            System.out.println("No commit with that id exists.");
+            Main.exit(0);
+        }
+        SortedMap<String, String> currBlob = currCommit().getTree();
+        SortedMap<String, String> givenBlob = givenCommit.getTree();
+        StagingArea currStage = StagingArea.read(_stage);
+        untrackedInTheWay(currBlob, givenBlob);
+        materialize(currBlob, givenBlob);
         Utils.writeContents(Utils.join(
                 _branchFile, currBranName()), givenCommit.getSha1());
-        Utils.writeContents(_currBranchF, "master");
         Utils.writeContents(_head, givenCommit.getSha1());
         currStage.reset();
-        Utils.writeObject(_stage, currStage);
+        currStage.compact(_stage);
     }
 
+    /** Prints the ids of the commits with message MESSAGE, in id order,
+     *  looking them up in the message index. The index is rebuilt from
+     *  every commit first if it does not cover all of them, as in a
+     *  repository made before it existed. */
     public void find(String message) {
-        boolean found = false;
-        for (String sha1: Utils.plainFilenamesIn(_commitFile)) {
-            Commit currCommit = getCommit(sha1);
-            if (currCommit.getMessage().equals(message)) {
-                System.out.println(sha1);
-                found = true;
-            }
-        } if (!found) {
+        if (_messages.size() != _commitIndex.size()) {
+            HashMap<String, String> messages = new HashMap<String, String>();
+            for (int i = 0; i < _commitIndex.size(); i += 1) {
+                String sha1 = _commitIndex.get(i);
+                messages.put(sha1, readCommit(sha1).getMessage());
+            }
+            _messages.rebuild(messages);
+        }
+        TreeSet<String> found = new TreeSet<String>();
+        for (String sha1: _messages.find(message)) {
+            if (readCommit(sha1).getMessage().equals(message)) {
+                found.add(sha1);
+            }
+        }
+        for (String sha1: found) {
+            System.out.println(sha1);
+        }
+        if (found.isEmpty()) {
             System.out.println("Found no commit with that message");
         }
     }
 
     public boolean commitExist(String sha1) {
-        for (File subFile: _commitFile.listFiles()) {
-            if (subFile.getName().startsWith(sha1)) {
-                return true;
-            }
+        return resolveCommit(sha1) != null;
+    }
+
+    static ObjectStore objects() {
+        return _objects;
+    }
+
+    static ObjectCache cache() {
+        return _cache;
+    }
+
+    /** Returns the commit SHA1, decoding it at most once per process. */
+    static Commit readCommit(String sha1) {
+        Commit commit = _cache.get(sha1, Commit.class);
+        if (commit == null) {
+            byte[] bytes = _objects.readContents(sha1);
+            commit = Commit.decode(sha1, bytes);
+            _cache.put(sha1, commit, bytes.length);
         }
-        return false;
+        return commit;
+    }
+
+    /** Returns the files of the tree SHA1, flattened as by Tree.read and
+     *  decoded at most once per process. The map is shared, so it cannot
+     *  be modified. */
+    @SuppressWarnings("unchecked")
+    static SortedMap<String, String> readTree(String sha1) {
+        SortedMap<String, String> files = _cache.get(sha1, SortedMap.class);
+        if (files == null) {
+            TreeMap<String, String> read = Tree.read(_objects, sha1);
+            files = Collections.unmodifiableSortedMap(read);
+            _cache.put(sha1, files, ObjectCache.weight(read));
+        }
+        return files;
     }
 
     public Commit currCommit() {
         String sha1 = Utils.readContentsAsString(_head);
-        return Utils.readObject(Utils.join(_commitFile, sha1), Commit.class);
+        return readCommit(sha1);
     }
 
+    /** Watches the working tree for changes until killed; see Watcher. */
+    public void watch() {
+        _watcher.run();
+    }
 
+    /** Serves commands on .gitlet/daemon.sock until killed; see Daemon. */
+    public void daemon() {
+        Daemon.serve(Utils.join(_gitletFold, "daemon.sock"));
+    }
 
+    /** Drops whatever has been loaded from .gitlet that another process
+     *  has changed since, and forgets the state of the working tree, so
+     *  that a command served by a long-running daemon sees the same
+     *  repository as a fresh process would. */
+    static void refresh() {
+        Config.refresh();
+        _objects.refresh();
+        _commitIndex.refresh();
+        _commitGraph.refresh();
+        _messages.refresh();
+        _commitLog.refresh();
+        _index.refresh();
+        _watcher.reset();
+    }
 
-
+    public void repack() {
+        _objects.repack();
+    }
 
     public void diff() throws IOException {
         String branch = currBranName();
@@ -685,38 +914,19 @@ public class Repo {
     public void diffBran(String branchName) throws IOException {
         if (!branchContains(branchName)) {
             System.out.println("A branch with that name does not exist.");
-            System.exit(0);
-        }
-        ArrayList<String> list2 = new ArrayList<>();
-        TreeMap<String, Blob> tree1 = getTree(branchName);
-        for (String name: tree1.keySet()) {
-            list2.add(name);
-        }
-        for (int i = 0; i < list2.size(); i += 1) {
-            String fileName = list2.get(i);
-            Utils.join(_diff, fileName).createNewFile();
-            byte[] blobCont = tree1.get(fileName).getContent();
-            Utils.writeContents(Utils.join(_diff, fileName),
-                    blobCont);
-            if (Utils.join(WORKDIRECT, fileName).exists()) {
-                String content = Utils.readContentsAsString(
-                        Utils.join(WORKDIRECT, fileName));
-                String blobcon = Utils.readContentsAsString(
-                        Utils.join(_diff, fileName));
-                if (content.equals(blobcon)) {
-                    continue;
-                }
-            }
+            Main.exit(0);
+        }
+        SortedMap<String, String> tree1 = getTree(branchName);
+        for (String fileName: tree1.keySet()) {
             File current = Utils.join(WORKDIRECT, fileName);
-            if (diffBranHelper(current, fileName)) {
-                current = Utils.join(_diff, fileName + "2");
-                current.createNewFile();
+            if (tree1.get(fileName).equals(_index.hash(fileName, current))) {
+                continue;
             }
-            Diff newDiff = new Diff();
-            newDiff.setSequences(Utils.join(_diff, fileName),
-                    Utils.join(WORKDIRECT, fileName));
-            secondLoop(newDiff, newDiff.sequence1(), newDiff.sequence2());
+            diffBranHelper(current, fileName);
+            FileDiff.print(FileDiff.Source.blob(_objects, tree1.get(fileName)),
+                    FileDiff.Source.file(current));
         }
+        _index.save();
     }
 
     public boolean diffBranHelper(File file, String fileName)
@@ -741,47 +951,28 @@ public class Repo {
             throws IOException {
         if (!branchContains(branch1) || !branchContains(branch2)) {
             System.out.println("At least one branch does not exist.");
-            System.exit(0);
-        }
-        TreeMap<String, Blob> tree1 = getTree(branch1);
-        TreeMap<String, Blob> tree2 = getTree(branch2);
-        ArrayList<String> list1 = new ArrayList<>();
-        ArrayList<String> list2 = new ArrayList<>();
-        for (String name: tree1.keySet()) {
-            list2.add(name);
-        }
-        for (int i = 0; i < list2.size(); i += 1) {
-            String fileName = list2.get(i);
-            boolean tree2Contains = tree2.containsKey(fileName);
-            list1.add(fileName);
-            Blob blob1 = tree1.get(fileName);
-            Blob blob2 = tree2.get(fileName);
-            if (tree2Contains) {
-                if (blob1.equals(blob2)) {
-                    continue;
-                }
-            }
-            Utils.join(_diff, fileName).createNewFile();
-            Utils.join(_diff, "2" + fileName).createNewFile();
-            writeBlob(fileName, blob1);
-            if (tree2Contains) {
-                writeBlob("2" + fileName, blob2);
+            Main.exit(0);
+        }
+        TreeMap<String, String[]> changes = Tree.diff(_objects,
+                branchCommit(branch1).getTreeSha1(),
+                branchCommit(branch2).getTreeSha1());
+        for (Map.Entry<String, String[]> change: changes.entrySet()) {
+            if (change.getValue()[0] != null) {
+                diffBlobs(change.getKey(), change.getValue());
             }
-            Diff newDiff = new Diff();
-            diffHelper(fileName, newDiff);
-            secondLoop(newDiff, newDiff.sequence1(), newDiff.sequence2());
         }
-        thirdLoop(tree1, tree2, list1);
+        thirdLoop(changes);
     }
 
-    public void diffHelper(String fileName, Diff newDiff) {
-        newDiff.setSequences(Utils.join(_diff, fileName),
-                Utils.join(_diff, "2" + fileName));
-        if (newDiff.sequence2().isEmpty()) {
+    /** Prints the header of the diff of FILENAME, where EMPTY1 and EMPTY2
+     *  say whether each version is empty or missing. */
+    public void diffHelper(String fileName, boolean empty1,
+                           boolean empty2) {
+        if (empty2) {
             System.out.println("diff --git a/" + fileName + " /dev/null");
             System.out.println("--- a/" + fileName);
             System.out.println("+++ dev/null");
-        } else if (newDiff.sequence1().isEmpty()) {
+        } else if (empty1) {
             System.out.println("diff --git /dev/null" + " b/" + fileName);
             if (fileName.equals("i.txt")) {
                 System.out.println("--- /dev/null");
@@ -801,92 +992,34 @@ public class Repo {
         }
     }
 
-    public void thirdLoop(TreeMap<String, Blob> tree1,
-                          TreeMap<String, Blob> tree2,
-                          ArrayList<String> list1) throws IOException {
-        ArrayList<String> list = new ArrayList<String>();
-        for (String fileName: tree2.keySet()) {
-            list.add(fileName);
-        }
-        for (int i = 0; i < list.size(); i += 1) {
-            String fileName = list.get(i);
-            if (!list1.contains(fileName)) {
-                Utils.join(_diff, fileName).createNewFile();
-                Utils.join(_diff, "2" + fileName).createNewFile();
-                if (tree1.containsKey(fileName)) {
-                    writeBlob(fileName, tree1.get(fileName));
-                }
-                writeBlob("2" + fileName, tree2.get(fileName));
-                Diff newDiff = new Diff();
-                diffHelper(fileName, newDiff);
-                secondLoop(newDiff, newDiff.sequence1(), newDiff.sequence2());
+    /** Prints the diffs of the files added in CHANGES, as returned by
+     *  Tree.diff, after those changed or removed. */
+    public void thirdLoop(TreeMap<String, String[]> changes) {
+        for (Map.Entry<String, String[]> change: changes.entrySet()) {
+            if (change.getValue()[0] == null) {
+                diffBlobs(change.getKey(), change.getValue());
             }
         }
     }
 
-    public void secondLoop(Diff newDiff, List<String> seq1, List<String> seq2) {
-        int[] array = newDiff.diffs();
-        for (int i = 0; i < array.length; i += 4) {
-            String result = stylePrint(i, array);
-            System.out.println(result);
-            int ind1 = 0;
-            int ind2 = 0;
-            int next = array[i + 1];
-            int second = array[i + 2];
-            int triple = array[i + 3];
-            while (ind1 < next) {
-                int index = array[i] + ind1;
-                String arr1 = seq1.get(index);
-                System.out.println("-" + arr1);
-                ind1 += 1;
-            }
-            while (ind2 < triple) {
-                int index = second + ind2;
-                String arr2 = seq2.get(index);
-                System.out.println("+" + arr2);
-                ind2 += 1;
-            }
-        }
-
+    /** Prints the diff of FILENAME between the pair of blobs BLOBS, null
+     *  where missing. */
+    private void diffBlobs(String fileName, String[] blobs) {
+        FileDiff.Source source1 = FileDiff.Source.blob(_objects, blobs[0]);
+        FileDiff.Source source2 = FileDiff.Source.blob(_objects, blobs[1]);
+        diffHelper(fileName, source1.size() == 0, source2.size() == 0);
+        FileDiff.print(source1, source2);
     }
 
-    public String stylePrint(int i, int[] array) {
-        String result = "";
-        int next = array[i + 1];
-        int second = array[i + 2];
-        int third = array[i + 3];
-        if (next != 0) {
-            int add = array[i] + 1;
-            result += "@@ -" + add;
-        } else {
-            result += "@@ -" + array[i];
-        }
-        if (next != 1) {
-            result += "," + next;
-        }
-        if (third != 0) {
-            int add = second + 1;
-            result += " +" + add;
-        } else {
-            result += " +" + second;
-        }
-        if (third != 1) {
-            result += "," + third;
-        }
-        result += " @@";
-        return result;
+    public SortedMap<String, String> getTree(String branchName) {
+        return branchCommit(branchName).getTree();
     }
 
-    public void writeBlob(String fileName, Blob blob) {
-        Utils.writeContents(Utils.join(_diff, fileName), blob.getContent());
-    }
-
-
-    public TreeMap<String, Blob> getTree(String branchName) {
+    /** Returns the head commit of BRANCHNAME. */
+    private Commit branchCommit(String branchName) {
         String branchCont = Utils.readContentsAsString(
                 Utils.join(_branchFile, branchName));
-        Commit branchComm = getCommit(branchCont);
-        return branchComm.getTree();
+        return getCommit(branchCont);
     }
 
 }
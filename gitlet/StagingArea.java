@@ -1,34 +1,150 @@
 package gitlet;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
 
+/** Files staged for addition and removal, stored in .gitlet/staging/stage
+ *  in a small binary encoding: the byte 'S', a version byte, and then for
+ *  the adding and then the removing stage a varint count followed by
+ *  each file's name (a varint length and UTF-8 bytes) and raw 20-byte
+ *  blob id, in name order. Stages written by older versions were
+ *  Java-serialized and are still read.
+ *
+ *  Changes are not written by rewriting that file but appended to
+ *  .gitlet/staging/journal, so staging one file costs one small write
+ *  however large the stage is. The journal starts with the byte 'J' and
+ *  a version byte; each entry is an int length, the change (an op byte,
+ *  the file name and, for ADD and REMOVE, its raw blob id), a CRC-32 of
+ *  the change and the length again, so the last entry can be checked
+ *  from the end of the file. Reading the stage replays the journal over
+ *  the stage file up to the first damaged entry, the remains of a write
+ *  cut short by a crash, which is cut off before anything is appended.
+ *  Compacting first journals a CLEAR and then every staged file, so
+ *  replaying the journal over either the old or the new stage file
+ *  gives the new stage, and a crash before the journal is deleted
+ *  neither loses the compaction nor replays older changes over it. */
 public class StagingArea implements Serializable {
 
+    /** serialVersionUID of the old Java-serialized stages. */
+    private static final long serialVersionUID = 2387522623585872328L;
+
+    /** first byte of an encoded stage. */
+    private static final int MAGIC = 'S';
+
+    /** version of the encoding. */
+    private static final int VERSION = 1;
+
+    /** first byte of the journal. */
+    private static final int JOURNAL_MAGIC = 'J';
+
+    /** bytes of the journal before its first entry. */
+    private static final int JOURNAL_HEADER = 2;
+
+    /** journal op staging a file for addition. */
+    private static final int ADD = 'a';
+
+    /** journal op staging a file for removal. */
+    private static final int REMOVE = 'r';
+
+    /** journal op unstaging a file. */
+    private static final int UNSTAGE = 'u';
+
+    /** journal op unstaging every file. */
+    private static final int CLEAR = 'c';
+
     /** tracked file, key: name, value: sha1 .*/
     private HashMap<String, String> addingStage;
 
     /** untracked file, key: name, value: sha1. */
     private HashMap<String, String> removingStage;
 
+    /** encoded journal entries of the changes made since this stage was
+     *  read or written, or null in stages that were Java-serialized. */
+    private transient List<byte[]> _changes;
+
     public StagingArea() {
         addingStage = new HashMap<String, String>();
         removingStage = new HashMap<String, String>();
+        _changes = new ArrayList<byte[]>();
     }
 
+    /** Stages FILENAME, with blob SHA1, for addition ("add") or removal
+     *  ("remove"), taking it out of the other stage. */
     public void addFileToStage(String tracking, String fileName, String sha1) {
         if (tracking == "add") {
-            addingStage.put(fileName, sha1);
+            apply(ADD, fileName, sha1);
         } else if (tracking == "remove") {
-            removingStage.put(fileName, sha1);
+            apply(REMOVE, fileName, sha1);
         } else {
             System.out.println("File must be added/removed.");
+            return;
         }
+        record(tracking == "add" ? ADD : REMOVE, fileName, sha1);
+    }
+
+    /** Takes FILENAME out of both stages. */
+    public void unstage(String fileName) {
+        apply(UNSTAGE, fileName, null);
+        record(UNSTAGE, fileName, null);
     }
 
     public void reset() {
-        addingStage = new HashMap<String, String>();
-        removingStage = new HashMap<String, String>();
+        apply(CLEAR, "", null);
+        record(CLEAR, "", null);
+    }
+
+    /** Applies the change OP to FILENAME with blob SHA1. */
+    private void apply(int op, String fileName, String sha1) {
+        if (op == CLEAR) {
+            addingStage.clear();
+            removingStage.clear();
+        } else if (op == ADD) {
+            removingStage.remove(fileName);
+            addingStage.put(fileName, sha1);
+        } else if (op == REMOVE) {
+            addingStage.remove(fileName);
+            removingStage.put(fileName, sha1);
+        } else {
+            addingStage.remove(fileName);
+            removingStage.remove(fileName);
+        }
+    }
+
+    /** Adds the journal entry of change OP to FILENAME with blob SHA1
+     *  to the changes to be written. */
+    private void record(int op, String fileName, String sha1) {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.write(op);
+        ObjectStore.writeString(body, fileName);
+        if (sha1 != null) {
+            body.writeBytes(ObjectStore.rawId(sha1));
+        }
+        byte[] bytes = body.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        ByteBuffer entry = ByteBuffer.allocate(bytes.length + 12);
+        entry.putInt(bytes.length).put(bytes)
+                .putInt((int) crc.getValue()).putInt(bytes.length);
+        if (_changes == null) {
+            _changes = new ArrayList<byte[]>();
+        }
+        _changes.add(entry.array());
     }
 
     public String getSha1(String tracking, String fileName) {
@@ -41,11 +157,225 @@ public class StagingArea implements Serializable {
         }
     }
 
-    public java.util.HashMap<String, String> getAddingStage() {
-        return addingStage;
+    public Map<String, String> getAddingStage() {
+        return Collections.unmodifiableMap(addingStage);
+    }
+
+    public Map<String, String> getRemovingStage() {
+        return Collections.unmodifiableMap(removingStage);
+    }
+
+    /** Returns the stage stored in FILE and its journal. */
+    public static StagingArea read(File file) {
+        StagingArea stage = decode(Utils.readContents(file));
+        File journal = journal(file);
+        if (journal.isFile()) {
+            byte[] bytes = Utils.readContents(journal);
+            int end = JOURNAL_HEADER;
+            if (bytes.length >= JOURNAL_HEADER && bytes[0] == JOURNAL_MAGIC
+                    && bytes[1] == VERSION) {
+                for (int next = valid(bytes, end); next > 0;
+                     next = valid(bytes, end)) {
+                    stage.replay(bytes, end + 4);
+                    end = next;
+                }
+            }
+        }
+        stage._changes = new ArrayList<byte[]>();
+        return stage;
+    }
+
+    /** Applies the change whose body starts at POS in BYTES. */
+    private void replay(byte[] bytes, int pos) {
+        int op = bytes[pos];
+        int[] at = {pos + 1};
+        String fileName = ObjectStore.readString(bytes, at);
+        String sha1 = null;
+        if (op == ADD || op == REMOVE) {
+            sha1 = ObjectStore.hexId(ByteBuffer.wrap(bytes), at[0]);
+        }
+        apply(op, fileName, sha1);
+    }
+
+    /** Returns the end of the journal entry starting at POS in BYTES,
+     *  or -1 if there is none or it is damaged. */
+    private static int valid(byte[] bytes, int pos) {
+        if (pos + 4 > bytes.length) {
+            return -1;
+        }
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        int length = buf.getInt(pos);
+        if (length < 0 || length > bytes.length - pos - 12) {
+            return -1;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes, pos + 4, length);
+        if (buf.getInt(pos + 4 + length) != (int) crc.getValue()
+                || buf.getInt(pos + 8 + length) != length) {
+            return -1;
+        }
+        return pos + 12 + length;
+    }
+
+    /** Records the changes made to this stage since it was read or
+     *  written in the journal of the stage in FILE, compacting the
+     *  journal into FILE once it is larger than core.stageJournalSize
+     *  bytes (by default 1 MiB). This stage need not have been read
+     *  from FILE: only its changes are written. */
+    public void write(File file) {
+        if (_changes == null || _changes.isEmpty()) {
+            return;
+        }
+        File journal = journal(file);
+        append(journal);
+        if (journal.length() > Config.getLong("core.stageJournalSize",
+                1L << 20)) {
+            read(file).compact(file);
+        }
+    }
+
+    /** Appends the changes to be written to JOURNAL, cutting off any
+     *  damaged entry at its end first. */
+    private void append(File journal) {
+        try (FileChannel channel = FileChannel.open(journal.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            long end = validEnd(channel, journal);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            if (end < JOURNAL_HEADER) {
+                out.write(JOURNAL_MAGIC);
+                out.write(VERSION);
+                end = 0;
+            }
+            for (byte[] entry: _changes) {
+                out.writeBytes(entry);
+            }
+            channel.truncate(end);
+            channel.write(ByteBuffer.wrap(out.toByteArray()), end);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        _changes.clear();
+    }
+
+    /** Returns the end of the undamaged part of JOURNAL, open as CHANNEL.
+     *  Only the last entry is checked unless it is damaged. */
+    private static long validEnd(FileChannel channel, File journal)
+            throws IOException {
+        long size = channel.size();
+        if (size < JOURNAL_HEADER) {
+            return 0;
+        }
+        if (size == JOURNAL_HEADER) {
+            return size;
+        }
+        ByteBuffer trailer = ByteBuffer.allocate(8);
+        if (size >= JOURNAL_HEADER + 12) {
+            channel.read(trailer, size - 8);
+            int length = trailer.getInt(4);
+            long start = size - 12 - length;
+            if (length >= 0 && start >= JOURNAL_HEADER) {
+                ByteBuffer entry = ByteBuffer.allocate(length + 12);
+                channel.read(entry, start);
+                if (valid(entry.array(), 0) == entry.capacity()) {
+                    return size;
+                }
+            }
+        }
+        byte[] bytes = Utils.readContents(journal);
+        if (bytes[0] != JOURNAL_MAGIC || bytes[1] != VERSION) {
+            return 0;
+        }
+        long end = JOURNAL_HEADER;
+        for (int next = valid(bytes, (int) end); next > 0;
+             next = valid(bytes, (int) end)) {
+            end = next;
+        }
+        return end;
     }
 
-    public HashMap<String, String> getRemovingStage() {
-        return removingStage;
+    /** Writes this whole stage, which must have been read or built in
+     *  full, to FILE and empties its journal. The new stage replaces the
+     *  old one atomically, after being journaled whole, so that a crash
+     *  before the journal is deleted still reads as the new stage. */
+    public void compact(File file) {
+        _changes = new ArrayList<byte[]>();
+        record(CLEAR, "", null);
+        for (Map.Entry<String, String> entry: addingStage.entrySet()) {
+            record(ADD, entry.getKey(), entry.getValue());
+        }
+        for (Map.Entry<String, String> entry: removingStage.entrySet()) {
+            record(REMOVE, entry.getKey(), entry.getValue());
+        }
+        append(journal(file));
+        File temp = new File(file.getPath() + ".lock");
+        Utils.writeContents(temp, encode());
+        try {
+            Files.move(temp.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        journal(file).delete();
+        _changes = new ArrayList<byte[]>();
+    }
+
+    /** Returns the journal of the stage in FILE. */
+    private static File journal(File file) {
+        return Utils.join(file.getParentFile(), "journal");
+    }
+
+    /** Returns the binary encoding of this stage. */
+    public byte[] encode() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(MAGIC);
+        out.write(VERSION);
+        encode(out, addingStage);
+        encode(out, removingStage);
+        return out.toByteArray();
+    }
+
+    private static void encode(ByteArrayOutputStream out,
+                               Map<String, String> stage) {
+        ObjectStore.writeVarint(out, stage.size());
+        for (Map.Entry<String, String> entry
+                : new TreeMap<String, String>(stage).entrySet()) {
+            ObjectStore.writeString(out, entry.getKey());
+            out.writeBytes(ObjectStore.rawId(entry.getValue()));
+        }
+    }
+
+    /** Returns the stage whose stored content is BYTES, in either the
+     *  binary encoding or the old serialized form. */
+    public static StagingArea decode(byte[] bytes) {
+        if (ObjectStore.isSerialized(bytes)) {
+            try (ObjectInputStream in = new ObjectInputStream(
+                    new ByteArrayInputStream(bytes))) {
+                return (StagingArea) in.readObject();
+            } catch (IOException | ClassCastException
+                    | ClassNotFoundException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        if (bytes.length < 2 || bytes[0] != MAGIC || bytes[1] != VERSION) {
+            throw new IllegalArgumentException("corrupt staging area");
+        }
+        StagingArea stage = new StagingArea();
+        int[] pos = {2};
+        decode(bytes, pos, stage.addingStage);
+        decode(bytes, pos, stage.removingStage);
+        return stage;
+    }
+
+    private static void decode(byte[] bytes, int[] pos,
+                               Map<String, String> stage) {
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        long count = ObjectStore.readVarint(bytes, pos);
+        for (long i = 0; i < count; i += 1) {
+            String name = ObjectStore.readString(bytes, pos);
+            stage.put(name, ObjectStore.hexId(buf, pos[0]));
+            pos[0] += ObjectStore.UID_LENGTH / 2;
+        }
     }
 }
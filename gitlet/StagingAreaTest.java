@@ -0,0 +1,146 @@
+package gitlet;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/** Tests of the stage file, its journal, and their compaction. */
+public class StagingAreaTest {
+
+    @Rule
+    public TemporaryFolder _tmp = new TemporaryFolder();
+
+    /** the stage file, and its journal. */
+    private File _file, _journal;
+
+    @Before
+    public void setUp() throws IOException {
+        File dir = _tmp.newFolder("staging");
+        _file = new File(dir, "stage");
+        _journal = new File(dir, "journal");
+        new StagingArea().compact(_file);
+    }
+
+    private static String id(String name) {
+        return Utils.sha1(name);
+    }
+
+    /** Reads the stage, makes the changes described by NAMES, each a file
+     *  name prefixed by + to add, - to remove or ~ to unstage it, and
+     *  writes them. */
+    private void change(String... names) {
+        StagingArea stage = StagingArea.read(_file);
+        for (String name: names) {
+            String file = name.substring(1);
+            if (name.startsWith("+")) {
+                stage.addFileToStage("add", file, id(file));
+            } else if (name.startsWith("-")) {
+                stage.addFileToStage("remove", file, id(file));
+            } else {
+                stage.unstage(file);
+            }
+        }
+        stage.write(_file);
+    }
+
+    private void assertStage(Map<String, String> adding,
+                             Map<String, String> removing) {
+        StagingArea stage = StagingArea.read(_file);
+        assertEquals(adding, stage.getAddingStage());
+        assertEquals(removing, stage.getRemovingStage());
+    }
+
+    @Test
+    public void changesAreJournaledAndReplayed() {
+        byte[] stageFile = Utils.readContents(_file);
+        change("+a", "+b", "-c");
+        change("~b", "-a", "+d");
+        assertArrayEquals(stageFile, Utils.readContents(_file));
+        assertTrue(_journal.length() > 0);
+        assertStage(Map.of("d", id("d")), Map.of("a", id("a"), "c", id("c")));
+    }
+
+    @Test
+    public void resetIsReplayed() {
+        change("+a", "-b");
+        StagingArea stage = StagingArea.read(_file);
+        stage.reset();
+        stage.write(_file);
+        change("+c");
+        assertStage(Map.of("c", id("c")), Map.of());
+    }
+
+    @Test
+    public void damagedLastEntryIsCutOff() throws IOException {
+        change("+a", "+b");
+        long whole = _journal.length();
+        change("+c");
+        try (RandomAccessFile journal = new RandomAccessFile(_journal,
+                "rw")) {
+            journal.setLength(journal.length() - 3);
+        }
+        assertStage(Map.of("a", id("a"), "b", id("b")), Map.of());
+        change("-d");
+        assertStage(Map.of("a", id("a"), "b", id("b")), Map.of("d", id("d")));
+        try (RandomAccessFile journal = new RandomAccessFile(_journal,
+                "rw")) {
+            journal.seek(journal.length());
+            journal.write(new byte[] {0, 0, 0, 9, 'a', 'x'});
+        }
+        change("+e");
+        assertStage(Map.of("a", id("a"), "b", id("b"), "e", id("e")),
+                Map.of("d", id("d")));
+        assertTrue(_journal.length() > whole);
+    }
+
+    @Test
+    public void compactionEmptiesTheJournal() {
+        change("+a", "-b", "+c", "~c");
+        StagingArea.read(_file).compact(_file);
+        assertFalse(_journal.exists());
+        assertStage(Map.of("a", id("a")), Map.of("b", id("b")));
+        change("+e");
+        assertStage(Map.of("a", id("a"), "e", id("e")),
+                Map.of("b", id("b")));
+    }
+
+    @Test
+    public void crashBeforeDeletingTheJournalKeepsTheCompaction()
+            throws IOException {
+        change("+a", "-b");
+        byte[] oldStage = Utils.readContents(_file);
+        File saved = new File(_tmp.getRoot(), "saved");
+        Files.createLink(saved.toPath(), _journal.toPath());
+        StagingArea stage = StagingArea.read(_file);
+        stage.reset();
+        stage.addFileToStage("add", "c", id("c"));
+        stage.compact(_file);
+        assertStage(Map.of("c", id("c")), Map.of());
+        Files.move(saved.toPath(), _journal.toPath());
+        assertStage(Map.of("c", id("c")), Map.of());
+        Utils.writeContents(_file, oldStage);
+        assertStage(Map.of("c", id("c")), Map.of());
+    }
+
+    @Test
+    public void serializedStageIsReadAndJournaledOver() {
+        StagingArea old = new StagingArea();
+        old.addFileToStage("add", "a", id("a"));
+        old.addFileToStage("remove", "b", id("b"));
+        Utils.writeContents(_file, Utils.serialize(old));
+        assertStage(Map.of("a", id("a")), Map.of("b", id("b")));
+        change("+b");
+        assertStage(Map.of("a", id("a"), "b", id("b")), Map.of());
+        StagingArea.read(_file).compact(_file);
+        assertFalse(ObjectStore.isSerialized(Utils.readContents(_file)));
+        assertStage(Map.of("a", id("a"), "b", id("b")), Map.of());
+    }
+}
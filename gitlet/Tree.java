@@ -0,0 +1,214 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** A directory listing: file names map to blob sha1s and subdirectory
+ *  names map to the sha1s of their own trees. Trees are stored by sha1,
+ *  so an unchanged directory is shared by every commit that has it.
+ *  A tree is stored as a TREE object in a small binary encoding: the
+ *  byte 'T', a version byte, then the files and then the
+ *  subdirectories, each as a varint count followed by that many records
+ *  of a name (a varint length and UTF-8 bytes) and a raw 20-byte id, in
+ *  name order. The id of a tree is the sha1 of that encoding. */
+public class Tree {
+
+    /** first byte of an encoded tree. */
+    private static final int MAGIC = 'T';
+
+    /** version of the encoding. */
+    private static final int VERSION = 1;
+
+    /** <fileName, blob sha1> for files directly in this directory. */
+    private TreeMap<String, String> _blobs;
+
+    /** <dirName, tree sha1> for subdirectories. */
+    private TreeMap<String, String> _trees;
+
+    public Tree() {
+        _blobs = new TreeMap<String, String>();
+        _trees = new TreeMap<String, String>();
+    }
+
+    public TreeMap<String, String> getBlobs() {
+        return _blobs;
+    }
+
+    public TreeMap<String, String> getTrees() {
+        return _trees;
+    }
+
+    /** Writes the trees for FILES, a map from slash-separated paths to
+     *  blob sha1s, into STORE and returns the sha1 of the root tree. */
+    public static String write(ObjectStore store,
+                               Map<String, String> files) {
+        Tree tree = new Tree();
+        TreeMap<String, TreeMap<String, String>> dirs =
+                new TreeMap<String, TreeMap<String, String>>();
+        for (Map.Entry<String, String> entry: files.entrySet()) {
+            String path = entry.getKey();
+            int slash = path.indexOf('/');
+            if (slash < 0) {
+                tree._blobs.put(path, entry.getValue());
+            } else {
+                String dir = path.substring(0, slash);
+                if (!dirs.containsKey(dir)) {
+                    dirs.put(dir, new TreeMap<String, String>());
+                }
+                dirs.get(dir).put(path.substring(slash + 1),
+                        entry.getValue());
+            }
+        }
+        for (String dir: dirs.keySet()) {
+            tree._trees.put(dir, write(store, dirs.get(dir)));
+        }
+        byte[] content = tree.encode();
+        String sha1 = Utils.sha1(content);
+        store.writeContents(ObjectStore.TREE, sha1, content);
+        return sha1;
+    }
+
+    /** Returns the binary encoding of this tree. */
+    byte[] encode() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(MAGIC);
+        out.write(VERSION);
+        encode(out, _blobs);
+        encode(out, _trees);
+        return out.toByteArray();
+    }
+
+    private static void encode(ByteArrayOutputStream out,
+                               TreeMap<String, String> entries) {
+        ObjectStore.writeVarint(out, entries.size());
+        for (Map.Entry<String, String> entry: entries.entrySet()) {
+            ObjectStore.writeString(out, entry.getKey());
+            out.writeBytes(ObjectStore.rawId(entry.getValue()));
+        }
+    }
+
+    /** Returns the tree SHA1 whose stored content is BYTES. */
+    static Tree decode(String sha1, byte[] bytes) {
+        if (bytes.length < 2 || bytes[0] != MAGIC) {
+            throw new IllegalArgumentException("corrupt tree " + sha1);
+        }
+        if (bytes[1] != VERSION) {
+            throw new IllegalArgumentException("unknown tree version "
+                    + bytes[1]);
+        }
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        int[] pos = {2};
+        Tree tree = new Tree();
+        decode(buf, pos, tree._blobs);
+        decode(buf, pos, tree._trees);
+        return tree;
+    }
+
+    private static void decode(ByteBuffer buf, int[] pos,
+                               TreeMap<String, String> entries) {
+        long count = ObjectStore.readVarint(buf.array(), pos);
+        for (long i = 0; i < count; i += 1) {
+            String name = ObjectStore.readString(buf.array(), pos);
+            entries.put(name, ObjectStore.hexId(buf, pos[0]));
+            pos[0] += ObjectStore.UID_LENGTH / 2;
+        }
+    }
+
+    /** Returns the tree SHA1 in STORE. */
+    static Tree load(ObjectStore store, String sha1) {
+        return decode(sha1, store.readContents(sha1));
+    }
+
+    /** Returns every file under the tree SHA1 in STORE, as a map from
+     *  slash-separated paths to blob sha1s. */
+    public static TreeMap<String, String> read(ObjectStore store,
+                                               String sha1) {
+        TreeMap<String, String> files = new TreeMap<String, String>();
+        flatten(store, sha1, "", files);
+        return files;
+    }
+
+    private static void flatten(ObjectStore store, String sha1,
+                                String prefix,
+                                TreeMap<String, String> files) {
+        Tree tree = load(store, sha1);
+        for (Map.Entry<String, String> entry: tree._blobs.entrySet()) {
+            files.put(prefix + entry.getKey(), entry.getValue());
+        }
+        for (Map.Entry<String, String> entry: tree._trees.entrySet()) {
+            flatten(store, entry.getValue(),
+                    prefix + entry.getKey() + "/", files);
+        }
+    }
+
+    /** Returns the files that differ between the trees SHA1A and SHA1B in
+     *  STORE, as a map from slash-separated paths to pairs {blob in A,
+     *  blob in B}, null where the file is missing. Both trees are walked
+     *  in lockstep, and a subtree with the same sha1 on both sides is
+     *  skipped without being read, so the cost follows the number of
+     *  changed paths rather than the size of the trees. */
+    public static TreeMap<String, String[]> diff(ObjectStore store,
+                                                 String sha1a,
+                                                 String sha1b) {
+        TreeMap<String, String[]> changes = new TreeMap<String, String[]>();
+        diff(store, sha1a, sha1b, "", changes);
+        return changes;
+    }
+
+    private static void diff(ObjectStore store, String sha1a, String sha1b,
+                             String prefix,
+                             TreeMap<String, String[]> changes) {
+        if (sha1a != null && sha1a.equals(sha1b)) {
+            return;
+        }
+        Tree a = sha1a == null ? new Tree() : load(store, sha1a);
+        Tree b = sha1b == null ? new Tree() : load(store, sha1b);
+        for (String name: changed(a._blobs, b._blobs)) {
+            changes.put(prefix + name,
+                    new String[] {a._blobs.get(name), b._blobs.get(name)});
+        }
+        for (String name: changed(a._trees, b._trees)) {
+            diff(store, a._trees.get(name), b._trees.get(name),
+                    prefix + name + "/", changes);
+        }
+    }
+
+    /** Returns the names whose values differ between the sorted maps A
+     *  and B, or that are in only one of them, walking each once. */
+    private static List<String> changed(TreeMap<String, String> a,
+                                        TreeMap<String, String> b) {
+        List<String> result = new ArrayList<String>();
+        Iterator<Map.Entry<String, String>> itA = a.entrySet().iterator();
+        Iterator<Map.Entry<String, String>> itB = b.entrySet().iterator();
+        Map.Entry<String, String> entryA = itA.hasNext() ? itA.next() : null;
+        Map.Entry<String, String> entryB = itB.hasNext() ? itB.next() : null;
+        while (entryA != null || entryB != null) {
+            int cmp;
+            if (entryA == null) {
+                cmp = 1;
+            } else if (entryB == null) {
+                cmp = -1;
+            } else {
+                cmp = entryA.getKey().compareTo(entryB.getKey());
+            }
+            if (cmp < 0 || cmp == 0
+                    && !entryA.getValue().equals(entryB.getValue())) {
+                result.add(entryA.getKey());
+            } else if (cmp > 0) {
+                result.add(entryB.getKey());
+            }
+            if (cmp <= 0) {
+                entryA = itA.hasNext() ? itA.next() : null;
+            }
+            if (cmp >= 0) {
+                entryB = itB.hasNext() ? itB.next() : null;
+            }
+        }
+        return result;
+    }
+}
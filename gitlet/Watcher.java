@@ -0,0 +1,383 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeSet;
+
+/** The files in the working tree, kept up to date incrementally when a
+ *  watcher is running. "gitlet watch" runs the watcher: it holds a lock
+ *  on .gitlet/watch/lock and appends the path of every file changed in
+ *  the working tree to .gitlet/watch/dirty, or the OVERFLOW line when
+ *  events were lost (and once on start, for changes made before it
+ *  started). Each command drains that log under a lock and applies it
+ *  to .gitlet/watch/snapshot, the list of working files as of the last
+ *  command, so only changed files need to be examined again. Without a
+ *  running watcher, or after an overflow, the whole tree is walked.
+ *
+ *  A change made just before a command may not be in the log yet, so
+ *  each command first syncs with the watcher, as git's fsmonitor does:
+ *  it creates a uniquely named cookie file in .gitlet/watch/cookies and
+ *  waits for the watcher to log it. Events are logged in the order they
+ *  are seen, so once the cookie is in the log so is every earlier
+ *  change. If the cookie does not arrive within core.watchTimeout
+ *  milliseconds (500 by default) the log is not trusted and the whole
+ *  tree is walked. */
+public class Watcher {
+
+    /** line of the dirty log saying events were lost. */
+    private static final String OVERFLOW = "\0";
+
+    /** start of a line of the dirty log naming a cookie seen. */
+    private static final String COOKIE = "\1";
+
+    /** first line of a snapshot whose index entries were all checked
+     *  against the working tree. */
+    private static final String VERIFIED = "verified";
+
+    /** first line of a snapshot taken by a full walk, whose index
+     *  entries may be out of date. */
+    private static final String UNVERIFIED = "unverified";
+
+    /** the working tree. */
+    private File _root;
+
+    /** the lock, dirty log and snapshot. */
+    private File _lock, _log, _snapshot;
+
+    /** the directory of sync cookies. */
+    private File _cookies;
+
+    /** number of cookies made by this process. */
+    private int _cookieCount;
+
+    /** working files, or null before the first use. */
+    private TreeSet<String> _files;
+
+    /** paths changed since the last command, or null if all of them
+     *  must be examined again. */
+    private TreeSet<String> _dirty;
+
+    /** true if every index entry not in _dirty is known to be current. */
+    private boolean _verified;
+
+    public Watcher(File root, File dir) {
+        _root = root;
+        _lock = Utils.join(dir, "lock");
+        _log = Utils.join(dir, "dirty");
+        _snapshot = Utils.join(dir, "snapshot");
+        _cookies = Utils.join(dir, "cookies");
+    }
+
+    /** Forgets what was learned about the working tree, so that the
+     *  next command in the same process looks again. */
+    public void reset() {
+        _files = null;
+        _dirty = null;
+        _verified = false;
+    }
+
+    /** Returns the slash-separated paths of the files in the working
+     *  tree, excluding .gitlet. */
+    public TreeSet<String> files() {
+        if (_files != null) {
+            return _files;
+        }
+        if (!active()) {
+            _files = new TreeSet<String>();
+            walk(_root, "", _files);
+            return _files;
+        }
+        boolean synced = sync();
+        List<String> changed = drain();
+        changed.removeIf(line -> line.startsWith(COOKIE));
+        if (!synced || changed.contains(OVERFLOW) || !_snapshot.isFile()) {
+            _files = new TreeSet<String>();
+            walk(_root, "", _files);
+            _verified = false;
+            save();
+            return _files;
+        }
+        List<String> lines = Arrays.asList(
+                Utils.readContentsAsString(_snapshot).split("\n"));
+        _verified = lines.get(0).equals(VERIFIED);
+        _files = new TreeSet<String>(lines.subList(1, lines.size()));
+        _files.remove("");
+        _dirty = new TreeSet<String>();
+        for (String path: changed) {
+            File file = Utils.join(_root, path);
+            _dirty.add(path);
+            _files.remove(path);
+            _files.subSet(path + "/", path + "0").clear();
+            if (file.isDirectory()) {
+                TreeSet<String> under = new TreeSet<String>();
+                walk(file, path + "/", under);
+                _dirty.addAll(under);
+                _files.addAll(under);
+            } else if (file.isFile()) {
+                _files.add(path);
+            }
+        }
+        if (!changed.isEmpty()) {
+            save();
+        }
+        return _files;
+    }
+
+    /** Returns the paths changed since the last command, or null if
+     *  every path must be examined again. */
+    public TreeSet<String> changed() {
+        files();
+        return _dirty;
+    }
+
+    /** Returns true if the index entry of PATH is known to match the
+     *  file, so that it need not even be stat'ed. */
+    public boolean unchanged(String path) {
+        files();
+        return _verified && _dirty != null && !_dirty.contains(path);
+    }
+
+    /** Records that the index entries of every working file have now
+     *  been checked against the files. */
+    public void verified() {
+        if (!_verified && _files != null && active()) {
+            _verified = true;
+            save();
+        }
+    }
+
+    /** Returns true if a watcher is running on this tree. */
+    private boolean active() {
+        if (!_lock.isFile()) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(_lock.toPath(),
+                StandardOpenOption.WRITE)) {
+            FileLock lock = channel.tryLock();
+            if (lock != null) {
+                lock.release();
+                return false;
+            }
+            return true;
+        } catch (IOException excp) {
+            return false;
+        }
+    }
+
+    /** Creates a cookie and waits for the watcher to log it, returning
+     *  false if it did not within core.watchTimeout milliseconds. */
+    private boolean sync() {
+        _cookieCount += 1;
+        String name = ProcessHandle.current().pid() + "-" + _cookieCount;
+        File cookie = Utils.join(_cookies, name);
+        byte[] line = (COOKIE + name + "\n").getBytes(StandardCharsets.UTF_8);
+        long deadline = System.currentTimeMillis()
+                + Config.getLong("core.watchTimeout", 500);
+        try {
+            if (!cookie.createNewFile()) {
+                return false;
+            }
+            while (!logged(line)) {
+                if (System.currentTimeMillis() > deadline) {
+                    return false;
+                }
+                Thread.sleep(1);
+            }
+            return true;
+        } catch (IOException | InterruptedException excp) {
+            return false;
+        } finally {
+            cookie.delete();
+        }
+    }
+
+    /** Returns true if the dirty log holds LINE. */
+    private boolean logged(byte[] line) throws IOException {
+        if (!_log.isFile()) {
+            return false;
+        }
+        byte[] contents = Utils.readContents(_log);
+        for (int i = 0; i + line.length <= contents.length; i += 1) {
+            if ((i == 0 || contents[i - 1] == '\n')
+                    && Arrays.equals(contents, i, i + line.length,
+                            line, 0, line.length)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Returns and clears the lines of the dirty log. */
+    private List<String> drain() {
+        if (!_log.isFile()) {
+            return new ArrayList<String>();
+        }
+        try (FileChannel channel = FileChannel.open(_log.toPath(),
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            FileLock lock = channel.lock();
+            ByteBuffer buf = ByteBuffer.allocate((int) channel.size());
+            while (buf.hasRemaining() && channel.read(buf) >= 0) {
+                continue;
+            }
+            channel.truncate(0);
+            lock.release();
+            String contents = new String(buf.array(), StandardCharsets.UTF_8);
+            List<String> result = new ArrayList<String>();
+            for (String line: contents.split("\n")) {
+                if (!line.isEmpty()) {
+                    result.add(line);
+                }
+            }
+            return result;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    private void save() {
+        StringBuilder out = new StringBuilder();
+        out.append(_verified ? VERIFIED : UNVERIFIED).append('\n');
+        for (String path: _files) {
+            out.append(path).append('\n');
+        }
+        Utils.writeContents(_snapshot, out.toString());
+    }
+
+    /** Adds the slash-separated paths of the files under DIR, which is
+     *  PREFIX in the working tree, to FILES, skipping .gitlet. */
+    static void walk(File dir, String prefix, TreeSet<String> files) {
+        String[] names = dir.list();
+        if (names == null) {
+            return;
+        }
+        for (String name: names) {
+            File file = new File(dir, name);
+            if (prefix.isEmpty() && name.equals(".gitlet")) {
+                continue;
+            } else if (file.isDirectory()) {
+                walk(file, prefix + name + "/", files);
+            } else {
+                files.add(prefix + name);
+            }
+        }
+    }
+
+    /** Watches the working tree until killed, logging changed paths. */
+    public void run() {
+        _lock.getParentFile().mkdirs();
+        try (FileChannel channel = FileChannel.open(_lock.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             WatchService service = FileSystems.getDefault()
+                     .newWatchService()) {
+            FileLock lock = channel.tryLock();
+            if (lock == null) {
+                System.out.println("A watcher is already running.");
+                return;
+            }
+            HashMap<WatchKey, Path> dirs = new HashMap<WatchKey, Path>();
+            register(service, _root.toPath(), dirs);
+            _cookies.mkdirs();
+            dirs.put(_cookies.toPath().register(service,
+                    StandardWatchEventKinds.ENTRY_CREATE), _cookies.toPath());
+            append(Arrays.asList(OVERFLOW));
+            while (true) {
+                WatchKey key = service.take();
+                List<String> changed = new ArrayList<String>();
+                while (key != null) {
+                    collect(service, key, dirs, changed);
+                    key = service.poll();
+                }
+                append(changed);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } catch (InterruptedException excp) {
+            return;
+        }
+    }
+
+    /** Adds the paths changed according to the events of KEY to
+     *  CHANGED, watching any new directories, and re-arms KEY. */
+    private void collect(WatchService service, WatchKey key,
+                         HashMap<WatchKey, Path> dirs, List<String> changed)
+            throws IOException {
+        Path dir = dirs.get(key);
+        for (WatchEvent<?> event: key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW
+                    || dir == null) {
+                changed.add(OVERFLOW);
+                continue;
+            }
+            if (dir.equals(_cookies.toPath())) {
+                changed.add(COOKIE + event.context());
+                continue;
+            }
+            Path child = dir.resolve((Path) event.context());
+            String path = _root.toPath().relativize(child).toString()
+                    .replace(File.separatorChar, '/');
+            if (path.equals(".gitlet") || path.startsWith(".gitlet/")) {
+                continue;
+            }
+            changed.add(path);
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE
+                    && child.toFile().isDirectory()) {
+                register(service, child, dirs);
+            }
+        }
+        if (!key.reset()) {
+            dirs.remove(key);
+        }
+    }
+
+    /** Watches DIR and every directory under it except .gitlet. */
+    private void register(WatchService service, Path dir,
+                          HashMap<WatchKey, Path> dirs) throws IOException {
+        dirs.put(dir.register(service, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_DELETE,
+                StandardWatchEventKinds.ENTRY_MODIFY), dir);
+        File[] children = dir.toFile().listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child: children) {
+            if (child.isDirectory() && !(dir.equals(_root.toPath())
+                    && child.getName().equals(".gitlet"))) {
+                register(service, child.toPath(), dirs);
+            }
+        }
+    }
+
+    /** Appends LINES to the dirty log under its lock. */
+    private void append(List<String> lines) throws IOException {
+        if (lines.isEmpty()) {
+            return;
+        }
+        StringBuilder out = new StringBuilder();
+        for (String line: lines) {
+            out.append(line).append('\n');
+        }
+        try (FileChannel channel = FileChannel.open(_log.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)) {
+            FileLock lock = channel.lock();
+            channel.write(ByteBuffer.wrap(
+                    out.toString().getBytes(StandardCharsets.UTF_8)));
+            lock.release();
+        }
+    }
+}